@@ -0,0 +1,18 @@
+package atag.cache;
+
+import atag.util.CacheStats;
+import atag.util.ResultTypes;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Procedure;
+
+import java.util.stream.Stream;
+
+public class CacheProcedures {
+
+    @Procedure(mode = Mode.READ)
+    @Description("hit, miss and eviction counters of all caches kept by the plugin")
+    public Stream<ResultTypes.CacheStatsResult> stats() {
+        return CacheStats.all().stream().map(ResultTypes.CacheStatsResult::new);
+    }
+}
@@ -0,0 +1,49 @@
+package atag.chains;
+
+import java.text.BreakIterator;
+import java.util.Locale;
+
+/**
+ * locale aware word segmentation based on {@link BreakIterator}.
+ * Other than the word tokenizer, runs of whitespace are kept together as one segment.
+ */
+class BreakIteratorTokenizer implements Tokenizer {
+
+    private final Locale locale;
+
+    BreakIteratorTokenizer(Locale locale) {
+        this.locale = locale;
+    }
+
+    @Override
+    public Cursor tokenize(String text) {
+        // BreakIterator instances are stateful, so a fresh one is required per text
+        BreakIterator breakIterator = BreakIterator.getWordInstance(locale);
+        breakIterator.setText(text);
+        return new Cursor() {
+            private int start = -1;
+            private int end = breakIterator.first();
+
+            @Override
+            public boolean next() {
+                int boundary = breakIterator.next();
+                if (boundary == BreakIterator.DONE) {
+                    return false;
+                }
+                start = end;
+                end = boundary;
+                return true;
+            }
+
+            @Override
+            public int start() {
+                return start;
+            }
+
+            @Override
+            public int end() {
+                return end;
+            }
+        };
+    }
+}
@@ -0,0 +1,351 @@
+package atag.chains;
+
+import org.neo4j.graphdb.*;
+
+import java.util.*;
+
+/**
+ * sparse position index of a chain, stored as properties on the chain's root node.
+ * Every {@code stride}-th element is recorded as a checkpoint holding its position and element id.
+ * An element is found by binary search over the checkpoints followed by a walk of less than about
+ * {@code stride} steps.
+ * <p>
+ * Checkpoints are stored in blocks of at most {@value #BLOCK_SIZE}, each with positions relative to the first
+ * checkpoint of the block. Only the directory, the ids and start positions of the blocks, is read up front,
+ * a block is read when it is needed. An edit shifts the start positions of the blocks behind it and rewrites
+ * the blocks it touches, so {@link #write(Node)} stores the directory of about {@code 12 * length / (stride * BLOCK_SIZE)}
+ * bytes and a few blocks instead of all checkpoints. Nothing is written if the index did not change.
+ * <p>
+ * Positions count chain elements, starting with 0. For a character chain this is the character offset.
+ * The root is either a node pointing to the first element (e.g. a {@code Text} node) or the first element itself.
+ */
+public class ChainIndex {
+
+    public static final String PROPERTY_STRIDE = "chainIndexStride";
+    public static final String PROPERTY_BLOCKS = "chainIndexBlocks";
+    public static final String PROPERTY_BLOCK_STARTS = "chainIndexBlockStarts";
+    /**
+     * prefixes of the properties holding the relative positions and the element ids of a block, followed by its id
+     */
+    public static final String PROPERTY_POSITIONS = "chainIndexPositions_";
+    public static final String PROPERTY_NODES = "chainIndexNodes_";
+
+    static final int BLOCK_SIZE = 256;
+
+    private static final class Block {
+        final int id;
+        long start;
+        // null until read from the root
+        long[] offsets;
+        String[] elementIds;
+        int size;
+        boolean dirty;
+
+        Block(int id, long start) {
+            this.id = id;
+            this.start = start;
+        }
+
+        long position(int i) {
+            return start + offsets[i];
+        }
+
+        void append(long position, String elementId) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.min(size * 2 + 1, BLOCK_SIZE));
+                elementIds = Arrays.copyOf(elementIds, offsets.length);
+            }
+            offsets[size] = position - start;
+            elementIds[size] = elementId;
+            size++;
+            dirty = true;
+        }
+    }
+
+    private final int stride;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Set<Integer> deletedBlocks = new HashSet<>();
+    // root the blocks are read from, null for an index not written yet
+    private Node root;
+    private int nextBlockId;
+    private boolean directoryDirty;
+    private Map<String, Block> blocksByElementId;
+
+    public ChainIndex(int stride) {
+        if (stride <= 0) {
+            throw new IllegalArgumentException("index stride must be positive");
+        }
+        this.stride = stride;
+        this.directoryDirty = true;
+    }
+
+    private ChainIndex(int stride, Node root, int[] ids, long[] starts) {
+        this.stride = stride;
+        this.root = root;
+        for (int i = 0; i < ids.length; i++) {
+            blocks.add(new Block(ids[i], starts[i]));
+            nextBlockId = Math.max(nextBlockId, ids[i] + 1);
+        }
+    }
+
+    /**
+     * @return the index stored on the given root node, null if there is none. Blocks are read when needed.
+     */
+    public static ChainIndex read(Node root) {
+        Object stride = root.getProperty(PROPERTY_STRIDE, null);
+        if (stride == null) {
+            return null;
+        }
+        return new ChainIndex(((Number) stride).intValue(), root,
+                (int[]) root.getProperty(PROPERTY_BLOCKS), (long[]) root.getProperty(PROPERTY_BLOCK_STARTS));
+    }
+
+    /**
+     * store the changes since the index has been read or written, a new index replaces any index stored before
+     */
+    public void write(Node root) {
+        if (this.root == null) {
+            List<String> previous = new ArrayList<>();
+            root.getPropertyKeys().forEach(key -> {
+                if (key.startsWith("chainIndex")) {
+                    previous.add(key);
+                }
+            });
+            previous.forEach(root::removeProperty);
+            this.root = root;
+        }
+        for (int id: deletedBlocks) {
+            root.removeProperty(PROPERTY_POSITIONS + id);
+            root.removeProperty(PROPERTY_NODES + id);
+        }
+        deletedBlocks.clear();
+        for (Block block: blocks) {
+            if (block.dirty) {
+                root.setProperty(PROPERTY_POSITIONS + block.id, Arrays.copyOf(block.offsets, block.size));
+                root.setProperty(PROPERTY_NODES + block.id, Arrays.copyOf(block.elementIds, block.size));
+                block.dirty = false;
+            }
+        }
+        if (directoryDirty) {
+            root.setProperty(PROPERTY_STRIDE, stride);
+            root.setProperty(PROPERTY_BLOCKS, blocks.stream().mapToInt(block -> block.id).toArray());
+            root.setProperty(PROPERTY_BLOCK_STARTS, blocks.stream().mapToLong(block -> block.start).toArray());
+            directoryDirty = false;
+        }
+    }
+
+    /**
+     * record an element while building a chain, only elements at a multiple of the stride are kept
+     */
+    public void add(long position, Node node) {
+        if (position % stride == 0) {
+            Block last = blocks.isEmpty() ? null : load(blocks.get(blocks.size() - 1));
+            if (last == null || last.size == BLOCK_SIZE) {
+                last = newBlock(position);
+                blocks.add(last);
+            }
+            last.append(position, node.getElementId());
+            directoryDirty = true;
+            blocksByElementId = null;
+        }
+    }
+
+    private Block newBlock(long start) {
+        Block block = new Block(nextBlockId++, start);
+        block.offsets = new long[16];
+        block.elementIds = new String[16];
+        block.dirty = true;
+        return block;
+    }
+
+    private Block load(Block block) {
+        if (block.offsets == null) {
+            block.offsets = (long[]) root.getProperty(PROPERTY_POSITIONS + block.id);
+            block.elementIds = (String[]) root.getProperty(PROPERTY_NODES + block.id);
+            block.size = block.offsets.length;
+        }
+        return block;
+    }
+
+    /**
+     * @return index of the last block starting before the given position, -1 if there is none
+     */
+    private int blockBefore(long position) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blocks.get(middle).start < position) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return the element at the given position, null if the chain is shorter
+     */
+    public Node nodeAt(Transaction tx, Node root, long position, RelationshipType relationshipType, Label elementLabel) {
+        if (position < 0) {
+            return null;
+        }
+        int b = blockBefore(position + 1);
+        Node node;
+        long current;
+        if (b < 0) {
+            node = firstElement(root, relationshipType, elementLabel);
+            current = 0;
+        } else {
+            Block block = load(blocks.get(b));
+            int checkpoint = Arrays.binarySearch(block.offsets, 0, block.size, position - block.start);
+            if (checkpoint < 0) {
+                checkpoint = -checkpoint - 2; // greatest checkpoint before position, the first one is at the start
+            }
+            node = tx.getNodeByElementId(block.elementIds[checkpoint]);
+            current = block.position(checkpoint);
+        }
+        for (; node != null && current < position; current++) {
+            node = ChainsProcedure.advance(relationshipType, node);
+        }
+        return node;
+    }
+
+    /**
+     * determine the position of a chain element by walking backwards to the closest checkpoint
+     */
+    public long positionOf(Node node, Node root, RelationshipType relationshipType, Label elementLabel) {
+        if (blocksByElementId == null) {
+            blocksByElementId = new HashMap<>();
+            blocks.forEach(this::addElementIds);
+        }
+        long steps = 0;
+        Node current = node;
+        while (true) {
+            String elementId = current.getElementId();
+            Block block = blocksByElementId.get(elementId);
+            if (block != null) {
+                for (int i = 0; i < block.size; i++) {
+                    if (block.elementIds[i].equals(elementId)) {
+                        return block.position(i) + steps;
+                    }
+                }
+            }
+            if (current.equals(root)) {
+                return root.hasLabel(elementLabel) ? steps : steps - 1;
+            }
+            Relationship relationship = current.getSingleRelationship(relationshipType, Direction.INCOMING);
+            if (relationship == null) {
+                throw new IllegalStateException("node %s is not part of the chain".formatted(node.getElementId()));
+            }
+            current = relationship.getStartNode();
+            steps++;
+        }
+    }
+
+    private void addElementIds(Block block) {
+        load(block);
+        for (int i = 0; i < block.size; i++) {
+            blocksByElementId.put(block.elementIds[i], block);
+        }
+    }
+
+    /**
+     * adjust the index after {@code removed} elements starting at {@code position} have been replaced
+     * by the given nodes. Only the blocks holding checkpoints from {@code position} on to the end of the removed
+     * elements are rebuilt, blocks behind them are just moved.
+     */
+    public void splice(long position, long removed, List<Node> inserted) {
+        long end = position + removed;
+        long delta = inserted.size() - removed;
+        int first = Math.max(blockBefore(position), 0);
+        int last = Math.max(blockBefore(end), first);
+        if (last >= blocks.size()) {
+            // empty index
+            last = first - 1;
+        }
+
+        List<Long> positions = new ArrayList<>();
+        List<String> elementIds = new ArrayList<>();
+        boolean changed = false;
+        for (int b = first; b <= last; b++) {
+            Block block = load(blocks.get(b));
+            for (int i = 0; i < block.size; i++) {
+                long checkpoint = block.position(i);
+                if (checkpoint < position) {
+                    positions.add(checkpoint);
+                    elementIds.add(block.elementIds[i]);
+                } else if (checkpoint < end) {
+                    changed = true;
+                } else {
+                    changed |= delta != 0;
+                }
+            }
+        }
+        for (int j = 0; j < inserted.size(); j++) {
+            if ((position + j) % stride == 0) {
+                positions.add(position + j);
+                elementIds.add(inserted.get(j).getElementId());
+                changed = true;
+            }
+        }
+        for (int b = first; b <= last; b++) {
+            Block block = blocks.get(b);
+            for (int i = 0; i < block.size; i++) {
+                long checkpoint = block.position(i);
+                if (checkpoint >= end) {
+                    positions.add(checkpoint + delta);
+                    elementIds.add(block.elementIds[i]);
+                }
+            }
+        }
+
+        for (int b = last + 1; b < blocks.size(); b++) {
+            blocks.get(b).start += delta;
+            directoryDirty |= delta != 0;
+        }
+        if (changed) {
+            rebuild(first, last, positions, elementIds);
+        }
+    }
+
+    /**
+     * replace the blocks from first to last by blocks holding the given checkpoints, reusing their ids
+     */
+    private void rebuild(int first, int last, List<Long> positions, List<String> elementIds) {
+        List<Block> replaced = new ArrayList<>(blocks.subList(first, last + 1));
+        blocks.subList(first, last + 1).clear();
+        int count = (positions.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        List<Block> rebuilt = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            int from = (int) ((long) positions.size() * k / count);
+            int to = (int) ((long) positions.size() * (k + 1) / count);
+            Block block = k < replaced.size() ? new Block(replaced.get(k).id, positions.get(from)) : newBlock(positions.get(from));
+            block.offsets = new long[to - from];
+            block.elementIds = new String[to - from];
+            for (int i = from; i < to; i++) {
+                block.append(positions.get(i), elementIds.get(i));
+            }
+            rebuilt.add(block);
+        }
+        for (int k = count; k < replaced.size(); k++) {
+            deletedBlocks.add(replaced.get(k).id);
+        }
+        blocks.addAll(first, rebuilt);
+        directoryDirty = true;
+
+        if (blocksByElementId != null) {
+            for (Block block: replaced) {
+                for (int i = 0; i < block.size; i++) {
+                    blocksByElementId.remove(block.elementIds[i]);
+                }
+            }
+            rebuilt.forEach(this::addElementIds);
+        }
+    }
+
+    static Node firstElement(Node root, RelationshipType relationshipType, Label elementLabel) {
+        return root.hasLabel(elementLabel) ? root : ChainsProcedure.advance(relationshipType, root);
+    }
+}
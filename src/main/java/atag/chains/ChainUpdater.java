@@ -0,0 +1,284 @@
+package atag.chains;
+
+import atag.util.ResultTypes;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.*;
+
+import java.util.*;
+
+/**
+ * replaces fragments of a chain, see {@link ChainsProcedure#update}.
+ * <p>
+ * Elements are matched by uuid, which is unique within a chain, so the old fragment and the replacement directly
+ * yield the edit script: matching elements are reused, the others are created or deleted. Relationships are only
+ * replaced where the predecessor of an element changes and properties are only written if their value differs,
+ * so replacing a fragment by a nearly identical one writes next to nothing.
+ * <p>
+ * If the chain carries {@code startIndex/endIndex}, the shift of the elements behind an edit is recorded in an
+ * {@link OffsetLog}, so an edit costs writes proportional to its size only. The stored offsets behind the edit stay
+ * stale until the log is compacted. With {@code offsetLog: false} they are rewritten right away instead, which writes
+ * every element up to the end of the chain.
+ * <p>
+ * The position index and the offset log of the text node are loaded once and written back by {@link #finish()},
+ * the index only where an edit changed it.
+ */
+class ChainUpdater {
+
+    private final Transaction tx;
+    private final Node textNode;
+    private final Label elementLabel;
+    private final RelationshipType relationshipType;
+    private final String uuidProperty;
+    private final boolean lazyOffsets;
+    private final int maxOffsetLogSize;
+
+    private final ChainIndex chainIndex;
+    private OffsetLog offsetLog;
+
+    ChainUpdater(Transaction tx, Node textNode, Label elementLabel, RelationshipType relationshipType,
+                 String uuidProperty, boolean lazyOffsets, int maxOffsetLogSize) {
+        this.tx = tx;
+        this.textNode = textNode;
+        this.elementLabel = elementLabel;
+        this.relationshipType = relationshipType;
+        this.uuidProperty = uuidProperty;
+        this.lazyOffsets = lazyOffsets;
+        this.maxOffsetLogSize = maxOffsetLogSize;
+        this.chainIndex = textNode == null ? null : ChainIndex.read(textNode);
+    }
+
+    /**
+     * elements currently located between beforeNode and afterNode
+     */
+    record Fragment(Node beforeNode, Node afterNode, List<Node> nodes, Map<String, Integer> positions) {
+    }
+
+    /**
+     * replace everything between beforeNode and afterNode
+     * @param beforeNode last element kept in front of the fragment, null for the start of the chain
+     * @param afterNode first element kept behind the fragment, null for the end of the chain
+     * @param replacement properties of the new elements, each must contain a uuid
+     * @return path of the new fragment and statistics
+     */
+    ResultTypes.UpdateResult replace(Node beforeNode, Node afterNode, List<Map<String, Object>> replacement) {
+        return replace(fragment(beforeNode, afterNode), replacement);
+    }
+
+    /**
+     * collect the elements between beforeNode and afterNode
+     */
+    Fragment fragment(Node beforeNode, Node afterNode) {
+        if ((beforeNode!=null) && beforeNode.equals(afterNode)) {
+            throw new IllegalArgumentException("beforeNode and afterNode must be different");
+        }
+        Node startNode = beforeNode == null ? textNode : beforeNode;
+        if (startNode == null) {
+            throw new IllegalArgumentException("either the text node or beforeNode must exist");
+        }
+
+        List<Node> existingNodes = new ArrayList<>();
+        Map<String, Integer> existingPositions = new HashMap<>();
+        for (Node node = ChainsProcedure.advance(relationshipType, startNode); node != null && !node.equals(afterNode);
+             node = ChainsProcedure.advance(relationshipType, node)) {
+            existingPositions.put((String) node.getProperty(uuidProperty), existingNodes.size());
+            existingNodes.add(node);
+        }
+        return new Fragment(beforeNode, afterNode, existingNodes, existingPositions);
+    }
+
+    /**
+     * replace a fragment collected before, fragments of the same chain not overlapping it stay valid
+     */
+    ResultTypes.UpdateResult replace(Fragment fragment, List<Map<String, Object>> replacement) {
+        Node beforeNode = fragment.beforeNode();
+        Node afterNode = fragment.afterNode();
+        List<Node> existingNodes = fragment.nodes();
+        Map<String, Integer> existingPositions = fragment.positions();
+        Node startNode = beforeNode == null ? textNode : beforeNode;
+
+        long position = 0;
+        if (chainIndex != null && beforeNode != null) {
+            position = chainIndex.positionOf(beforeNode, textNode, relationshipType, elementLabel) + 1;
+        }
+
+        // with lazy offsets those behind the edit are not touched, the shift is recorded in the offset log instead
+        boolean trackOffsets = textNode != null && hasOffsets(beforeNode, existingNodes, afterNode);
+        OffsetLog offsetLog = trackOffsets ? offsetLog() : null;
+        long offset = 0;
+        long removedLength = 0;
+        if (trackOffsets) {
+            offset = beforeNode == null ? 0 : offsetLog.offsets(beforeNode)[1] + 1;
+            removedLength = existingNodes.stream().mapToLong(OffsetLog::textLength).sum();
+        }
+
+        boolean[] reused = new boolean[existingNodes.size()];
+        long reusedCount = 0;
+        long createdCount = 0;
+        List<Node> inserted = new ArrayList<>(replacement.size());
+        Node currentNode = startNode;
+        PathImpl.Builder builder = null;
+
+        for (Map<String, Object> data: replacement) {
+            String uuid = Optional.ofNullable(data.get("uuid")).orElseThrow(() -> new IllegalArgumentException("uuid property is required")).toString();
+
+            Integer source = existingPositions.get(uuid);
+            Relationship currentRelationship;
+            if (source == null || reused[source]) {
+                Node newNode = tx.createNode(elementLabel);
+                currentRelationship = currentNode.createRelationshipTo(newNode, relationshipType);
+                currentNode = newNode;
+                data.forEach(currentNode::setProperty);
+                createdCount++;
+            } else {
+                Node existingNode = existingNodes.get(source);
+                reused[source] = true;
+                Relationship existingRelationship = existingNode.getSingleRelationship(relationshipType, Direction.INCOMING);
+                if (existingRelationship.getStartNode().equals(currentNode)) {
+                    currentRelationship = existingRelationship;
+                } else {
+                    existingRelationship.delete();
+                    currentRelationship = currentNode.createRelationshipTo(existingNode, relationshipType);
+                }
+                currentNode = existingNode;
+                for (Map.Entry<String, Object> e: data.entrySet()) {
+                    if (!Objects.deepEquals(currentNode.getProperty(e.getKey(), null), e.getValue())) {
+                        currentNode.setProperty(e.getKey(), e.getValue());
+                    }
+                }
+                reusedCount++;
+            }
+            inserted.add(currentNode);
+
+            builder = builder == null ? new PathImpl.Builder(currentNode) : builder.push(currentRelationship);
+        }
+
+        // remove leftover nodes
+        long deletedCount = 0;
+        for (int i = 0; i < reused.length; i++) {
+            if (!reused[i]) {
+                Node n = existingNodes.get(i);
+                n.getRelationships().forEach(Relationship::delete);
+                n.delete();
+                deletedCount++;
+            }
+        }
+
+        // ensure last node is connected to afterNode
+        if ((!currentNode.hasRelationship(Direction.OUTGOING, relationshipType)) && (afterNode!=null)) {
+            Relationship r = afterNode.getSingleRelationship(relationshipType, Direction.INCOMING);
+            if (r!=null) {
+                r.delete();
+            }
+            currentNode.createRelationshipTo(afterNode, relationshipType);
+        }
+
+        if (chainIndex != null) {
+            chainIndex.splice(position, existingNodes.size(), inserted);
+        }
+        if (trackOffsets) {
+            long insertedLength = inserted.stream().mapToLong(OffsetLog::textLength).sum();
+            if (lazyOffsets) {
+                offsetLog.record(offset, removedLength, insertedLength);
+            } else if (afterNode != null) {
+                OffsetLog.shift(afterNode, relationshipType, insertedLength - removedLength);
+            }
+            for (Node node: inserted) {
+                long length = OffsetLog.textLength(node);
+                offsetLog.stamp(node, offset, length);
+                offset += length;
+            }
+        }
+        return new ResultTypes.UpdateResult(builder == null ? null : builder.build(), reusedCount, createdCount, deletedCount);
+    }
+
+    /**
+     * ensure fragments can be replaced independently of each other: no element may be part of two fragments,
+     * no boundary may be part of another fragment and no two fragments may share the same boundary
+     * @throws IllegalArgumentException naming the first two conflicting fragments
+     */
+    static void checkDisjoint(List<Fragment> fragments) {
+        Map<Node, Integer> owners = new HashMap<>();
+        Map<Node, Integer> before = new HashMap<>();
+        Map<Node, Integer> after = new HashMap<>();
+        int startOfChain = -1;
+        int endOfChain = -1;
+        for (int i = 0; i < fragments.size(); i++) {
+            Fragment fragment = fragments.get(i);
+            for (Node node: fragment.nodes()) {
+                claim(owners, node, i);
+            }
+            if (fragment.beforeNode() == null) {
+                startOfChain = checkUnique(startOfChain, i);
+            } else {
+                claim(before, fragment.beforeNode(), i);
+            }
+            if (fragment.afterNode() == null) {
+                endOfChain = checkUnique(endOfChain, i);
+            } else {
+                claim(after, fragment.afterNode(), i);
+            }
+        }
+        for (Map<Node, Integer> boundaries: List.of(before, after)) {
+            for (Map.Entry<Node, Integer> boundary: boundaries.entrySet()) {
+                Integer owner = owners.get(boundary.getKey());
+                if (owner != null) {
+                    throw overlap(owner, boundary.getValue());
+                }
+            }
+        }
+    }
+
+    private static void claim(Map<Node, Integer> claims, Node node, int fragment) {
+        Integer previous = claims.putIfAbsent(node, fragment);
+        if (previous != null) {
+            throw overlap(previous, fragment);
+        }
+    }
+
+    private static int checkUnique(int previous, int fragment) {
+        if (previous >= 0) {
+            throw overlap(previous, fragment);
+        }
+        return fragment;
+    }
+
+    private static IllegalArgumentException overlap(int first, int second) {
+        return new IllegalArgumentException("operations %d and %d overlap".formatted(first, second));
+    }
+
+    /**
+     * write position index and offset log back to the text node
+     */
+    void finish() {
+        if (chainIndex != null) {
+            chainIndex.write(textNode);
+        }
+        if (offsetLog != null && lazyOffsets) {
+            if (offsetLog.size() > maxOffsetLogSize) {
+                OffsetLog.reindex(textNode, relationshipType, elementLabel);
+            } else {
+                offsetLog.write(textNode);
+            }
+        }
+    }
+
+    private OffsetLog offsetLog() {
+        if (offsetLog == null) {
+            offsetLog = OffsetLog.read(textNode, relationshipType);
+            if (!lazyOffsets && offsetLog.size() > 0) {
+                // left by earlier updates with offsetLog, shifting stored offsets requires them to be current
+                OffsetLog.reindex(textNode, relationshipType, elementLabel);
+                offsetLog = OffsetLog.read(textNode, relationshipType);
+            }
+        }
+        return offsetLog;
+    }
+
+    private static boolean hasOffsets(Node beforeNode, Collection<Node> existingNodes, Node afterNode) {
+        if (beforeNode != null) {
+            return beforeNode.hasProperty(ChainsProcedure.PROPERTY_START_INDEX);
+        }
+        return (afterNode != null && afterNode.hasProperty(ChainsProcedure.PROPERTY_START_INDEX))
+                || existingNodes.stream().anyMatch(node -> node.hasProperty(ChainsProcedure.PROPERTY_START_INDEX));
+    }
+}
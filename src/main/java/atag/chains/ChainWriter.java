@@ -0,0 +1,120 @@
+package atag.chains;
+
+import org.neo4j.graphdb.*;
+
+/**
+ * appends element nodes to a chain, one segment at a time.
+ * Keeps track of the running offset, so a chain can be continued across transactions.
+ */
+public class ChainWriter {
+
+    private Transaction tx;
+    private final Label label;
+    private final RelationshipType relationshipType;
+    private final boolean applyIndexProperties;
+
+    private int index = 0;
+    private long count = 0;
+    private Node first;
+    private Node last;
+    private Relationship lastRelationship;
+    private ChainIndex chainIndex;
+
+    public ChainWriter(Transaction tx, Label label, RelationshipType relationshipType, boolean applyIndexProperties) {
+        this.tx = tx;
+        this.label = label;
+        this.relationshipType = relationshipType;
+        this.applyIndexProperties = applyIndexProperties;
+    }
+
+    /**
+     * record checkpoints for a {@link ChainIndex} while writing
+     * @param stride distance between checkpoints, 0 disables the index
+     * @return this
+     */
+    public ChainWriter withIndex(int stride) {
+        chainIndex = stride > 0 ? new ChainIndex(stride) : null;
+        return this;
+    }
+
+    /**
+     * create a new chain element for the given segment and connect it to the previous one
+     * @param text segment of the text represented by the new node
+     * @return the new node
+     */
+    public Node append(String text) {
+        Node node = tx.createNode(label);
+        node.setProperty("text", text);
+
+        if (applyIndexProperties) {
+            node.setProperty(ChainsProcedure.PROPERTY_START_INDEX, index);
+        }
+        index += text.length();
+        if (applyIndexProperties) {
+            node.setProperty(ChainsProcedure.PROPERTY_END_INDEX, index - 1);
+        }
+
+        if (last == null) {
+            first = node;
+            lastRelationship = null;
+        } else {
+            lastRelationship = last.createRelationshipTo(node, relationshipType);
+        }
+        last = node;
+        if (chainIndex != null) {
+            chainIndex.add(count, node);
+        }
+        count++;
+        return node;
+    }
+
+    /**
+     * continue the chain in another transaction, e.g. after the previous one has been committed
+     * @param tx the transaction to be used for subsequent writes
+     */
+    public void rebind(Transaction tx) {
+        this.tx = tx;
+        first = first == null ? null : tx.getNodeByElementId(first.getElementId());
+        last = last == null ? null : tx.getNodeByElementId(last.getElementId());
+        lastRelationship = null;
+    }
+
+    /**
+     * store the index recorded so far on the given node, no-op if no index has been requested
+     * @param root root of the chain, either the node pointing to the first element or the first element itself
+     */
+    public void writeIndex(Node root) {
+        if (chainIndex != null) {
+            chainIndex.write(root);
+        }
+    }
+
+    public Node first() {
+        return first;
+    }
+
+    public Node last() {
+        return last;
+    }
+
+    /**
+     * @return the relationship created by the most recent {@link #append(String)}, null for the first element
+     */
+    public Relationship lastRelationship() {
+        return lastRelationship;
+    }
+
+    /**
+     * @return number of elements written so far
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return offset in the text right after the last element written so far
+     */
+    public int index() {
+        return index;
+    }
+}
@@ -1,14 +1,17 @@
 package atag.chains;
 
+import atag.util.NodeLookup;
+import atag.util.Parallel;
 import atag.util.ResultTypes;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.*;
-import org.neo4j.internal.helpers.collection.Iterables;
+import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.UserFunction;
 
 import java.util.*;
 import java.util.stream.Stream;
@@ -24,210 +27,440 @@ public class ChainsProcedure {
     @Context
     public Transaction tx;
 
+    private static final String TOKEN_REGEX = "(?U)((?<=\\W)|(?=\\W))";
+    private static final int DEFAULT_MAX_OFFSET_LOG_SIZE = 1000;
+
+    @Context
+    public GraphDatabaseService db;
+
     @Context
     public Log log;
 
-    @Procedure(mode = Mode.WRITE)
-    public Stream<ResultTypes.PathResult> characterChain(
-            @Name("string to be used for building a chain of nodes") String text,
-            @Name(value = "whether to add startIndex/endIndex properties", defaultValue = "true") boolean applyIndexProperties) {
-        Path chain = characterChainInternal(text, applyIndexProperties);
-        return asPathResult(chain);
+    private enum ResultMode {
+        PATH, SUMMARY, NODES;
+
+        static ResultMode of(Object value) {
+            if (value == null) {
+                return PATH;
+            }
+            try {
+                return valueOf(value.toString().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown resultMode '%s', must be one of path, summary, nodes".formatted(value));
+            }
+        }
     }
 
-    private Path characterChainInternal(String text, boolean applyIndexProperties) {
-        return chainInternal(text, "", "Character", REL_NEXT_CHARACTER.name(), applyIndexProperties);
+    public static class FullChainResult {
+        public final Node node;
+        public final long characters;
+        public final long tokens;
+        public final String error;
+
+        public FullChainResult(Node node, long characters, long tokens, String error) {
+            this.node = node;
+            this.characters = characters;
+            this.tokens = tokens;
+            this.error = error;
+        }
+    }
+
+    private record ChainedText(String elementId, long characters, long tokens, String error) {
+    }
+
+    public static class BatchResult {
+        public final long batch;
+        public final long count;
+        public final long total;
+        public final Node first;
+        public final Node last;
+
+        public BatchResult(long batch, long count, long total, Node first, Node last) {
+            this.batch = batch;
+            this.count = count;
+            this.total = total;
+            this.first = first;
+            this.last = last;
+        }
     }
 
     @Procedure(mode = Mode.WRITE)
-    public Stream<ResultTypes.PathResult> tokenChain(
+    public Stream<ResultTypes.ChainResult> characterChain(
             @Name("string to be used for building a chain of nodes") String text,
-            @Name(value = "whether to add startIndex/endIndex properties", defaultValue = "true") boolean applyIndexProperties) {
-        Path chain = tokenChainInternal(text, applyIndexProperties);
-        return asPathResult(chain);
+            @Name(value = "whether to add startIndex/endIndex properties", defaultValue = "true") boolean applyIndexProperties,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        return chainResult(text, Tokenizers.characters(), "Character", REL_NEXT_CHARACTER.name(), applyIndexProperties, config);
     }
 
-    private Path tokenChainInternal(String text, boolean applyIndexProperties) {
-        return chainInternal(text, "(?U)((?<=\\W)|(?=\\W))", "Token", REL_NEXT_TOKEN.name(), applyIndexProperties);
+    @Procedure(mode = Mode.WRITE)
+    public Stream<ResultTypes.ChainResult> tokenChain(
+            @Name("string to be used for building a chain of nodes") String text,
+            @Name(value = "whether to add startIndex/endIndex properties", defaultValue = "true") boolean applyIndexProperties,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        Tokenizer tokenizer = Tokenizers.forName(config.getOrDefault("tokenizer", "word").toString(), TOKEN_REGEX, config);
+        return chainResult(text, tokenizer, "Token", REL_NEXT_TOKEN.name(), applyIndexProperties, config);
     }
 
     @Procedure(mode = Mode.WRITE)
     public void fullChain(
             @Name("start node holding the text in a property") Node start,
             @Name("property key") String propertyKey,
-            @Name(value = "whether to add startIndex/endIndex properties to character nodes", defaultValue = "true") boolean applyIndexProperties) {
+            @Name(value = "whether to add startIndex/endIndex properties to character nodes", defaultValue = "true") boolean applyIndexProperties,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
 
         String text = (String) start.getProperty(propertyKey);
-        List<Node> characterChain = Iterables.asList(characterChainInternal(text, applyIndexProperties).nodes());
-        Iterable<Node> tokenChain = tokenChainInternal(text, true).nodes();
+        new FullChainBuilder(Tokenizers.words(), applyIndexProperties, indexStride(config)).build(tx, start, text);
+    }
 
-        start.createRelationshipTo(characterChain.get(0), REL_NEXT_CHARACTER);
+    @Procedure(mode = Mode.WRITE)
+    public Stream<FullChainResult> fullChainParallel(
+            @Name("list of start nodes or label of start nodes") Object nodes,
+            @Name("property key") String propertyKey,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        int parallelism = Parallel.parallelism(config);
+        boolean applyIndexProperties = !Boolean.FALSE.equals(config.get("applyIndexProperties"));
+        int indexStride = indexStride(config);
+
+        List<FullChainResult> results = new ArrayList<>();
+        try (ResourceIterator<String> elementIds = Parallel.elementIds(tx, nodes)) {
+            Parallel.forEachOrdered(elementIds, parallelism,
+                    elementId -> fullChainInOwnTransaction(elementId, propertyKey, applyIndexProperties, indexStride),
+                    chainedText -> results.add(new FullChainResult(tx.getNodeByElementId(chainedText.elementId()),
+                            chainedText.characters(), chainedText.tokens(), chainedText.error())));
+        }
+        return results.stream();
+    }
 
-        Node first = null;
-        for (Node token : tokenChain) {
-            if (first == null) {
-                first = token;
-                start.createRelationshipTo(first, REL_NEXT_TOKEN);
+    private ChainedText fullChainInOwnTransaction(String elementId, String propertyKey, boolean applyIndexProperties, int indexStride) {
+        try (Transaction innerTx = db.beginTx()) {
+            Node start = innerTx.getNodeByElementId(elementId);
+            if (!(start.getProperty(propertyKey, null) instanceof String text)) {
+                throw new IllegalArgumentException("node has no string property %s".formatted(propertyKey));
             }
-
-            int startIndex = (int) token.getProperty(PROPERTY_START_INDEX);
-            int endIndex = (int) token.getProperty(PROPERTY_END_INDEX);
-            token.createRelationshipTo(characterChain.get(startIndex), REL_TOKEN_START);
-            token.createRelationshipTo(characterChain.get(endIndex), REL_TOKEN_END);
+            FullChainBuilder builder = new FullChainBuilder(Tokenizers.words(), applyIndexProperties, indexStride);
+            builder.build(innerTx, start, text);
+            innerTx.commit();
+            return new ChainedText(elementId, builder.characterCount(), builder.tokenCount(), null);
+        } catch (RuntimeException e) {
+            log.warn("fullChainParallel: failed to chain node {}: {}", elementId, e.getMessage());
+            return new ChainedText(elementId, 0, 0, e.getMessage());
         }
-
     }
 
     @Procedure(mode = Mode.WRITE)
-    public Stream<ResultTypes.PathResult> chain(
+    public Stream<ResultTypes.ChainResult> chain(
             @Name("string to be used for building a chain of nodes") String text,
             @Name("separator regex pattern") String regex,
             @Name("label for new nodes") String labelString,
             @Name("relationship type used for the chain") String relType,
-            @Name("whether to add startIndex/endIndex properties") boolean applyIndexProperties) {
-        Path build = chainInternal(text, regex, labelString, relType, applyIndexProperties);
-        return asPathResult(build);
+            @Name("whether to add startIndex/endIndex properties") boolean applyIndexProperties,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        return chainResult(text, Tokenizers.regex(regex), labelString, relType, applyIndexProperties, config);
     }
 
-    private Path chainInternal(String text, String regex, String labelString, String relType, boolean applyIndexProperties) {
-        Label label = Label.label(labelString);
-        RelationshipType relationshipType = RelationshipType.withName(relType);
-        PathImpl.Builder builder = null;
-
-        int index = 0;
-        Node previousNode = null;
-        for (String s : text.split(regex)) {
-            Node node = tx.createNode(label);
-            node.setProperty("text", s);
+    /**
+     * builds a chain and returns it in the shape requested by the {@code resultMode} config setting:
+     * <ul>
+     *     <li>{@code path}: a single row holding the full path (default)</li>
+     *     <li>{@code summary}: a single row holding first and last node and the number of nodes, no path is built</li>
+     *     <li>{@code nodes}: one row per node, nodes are created lazily while the result is consumed</li>
+     * </ul>
+     */
+    private Stream<ResultTypes.ChainResult> chainResult(String text, Tokenizer tokenizer, String labelString, String relType,
+                                                        boolean applyIndexProperties, Map<String, Object> config) {
+        ResultMode resultMode = ResultMode.of(config.get("resultMode"));
+        ChainWriter writer = new ChainWriter(tx, Label.label(labelString), RelationshipType.withName(relType), applyIndexProperties)
+                .withIndex(indexStride(config));
+        Tokenizer.Cursor cursor = tokenizer.tokenize(text);
+
+        if (resultMode == ResultMode.PATH) {
+            PathImpl.Builder builder = null;
+            while (cursor.next()) {
+                Node node = writer.append(text.substring(cursor.start(), cursor.end()));
+                builder = builder == null ? new PathImpl.Builder(node) : builder.push(writer.lastRelationship());
+            }
+            writeIndex(writer);
+            return builder == null ? Stream.empty() : Stream.of(ResultTypes.ChainResult.ofPath(builder.build()));
+        }
 
-            if (applyIndexProperties) {
-                node.setProperty(PROPERTY_START_INDEX, index);
+        if (resultMode == ResultMode.SUMMARY) {
+            while (cursor.next()) {
+                writer.append(text.substring(cursor.start(), cursor.end()));
             }
-            index+=s.length();
-            if (applyIndexProperties) {
-                node.setProperty(PROPERTY_END_INDEX, index-1);
+            writeIndex(writer);
+            return Stream.of(ResultTypes.ChainResult.ofSummary(writer.first(), writer.last(), writer.count()));
+        }
+        Iterator<ResultTypes.ChainResult> nodes = new Iterator<>() {
+            private Boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (hasNext == null) {
+                    hasNext = cursor.next();
+                    if (!hasNext) {
+                        writeIndex(writer);
+                    }
+                }
+                return hasNext;
             }
 
-            if (previousNode==null) {
-                builder=new PathImpl.Builder(node);
-            } else {
-                Relationship rel = previousNode.createRelationshipTo(node, relationshipType);
-                builder = builder.push(rel);
+            @Override
+            public ResultTypes.ChainResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasNext = null;
+                Node node = writer.append(text.substring(cursor.start(), cursor.end()));
+                return ResultTypes.ChainResult.ofNode(writer.count() - 1, node);
             }
-            previousNode = node;
+        };
+        return Iterators.stream(nodes);
+    }
+
+    /**
+     * a chain without text node gets its index stored on the first element
+     */
+    private static void writeIndex(ChainWriter writer) {
+        if (writer.first() != null) {
+            writer.writeIndex(writer.first());
+        }
+    }
+
+    /**
+     * @return distance between checkpoints of the position index from the {@code indexStride} setting, 0 for no index
+     */
+    public static int indexStride(Map<String, Object> config) {
+        Object value = config.get("indexStride");
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public void createIndex(
+            @Name("root of the chain, either a node pointing to the first element or the first element itself") Node root,
+            @Name(value = "distance between index checkpoints", defaultValue = "64") long stride,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", REL_NEXT_CHARACTER.name()).toString());
+        Label elementLabel = Label.label(config.getOrDefault("elementLabel", "Character").toString());
+        ChainIndex chainIndex = new ChainIndex((int) stride);
+        long position = 0;
+        for (Node node = ChainIndex.firstElement(root, relationshipType, elementLabel); node != null; node = advance(relationshipType, node)) {
+            chainIndex.add(position++, node);
+        }
+        chainIndex.write(root);
+    }
+
+    @UserFunction
+    public Node nodeAt(
+            @Name("root of the chain, either a node pointing to the first element or the first element itself") Node root,
+            @Name("position of the element") long position,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", REL_NEXT_CHARACTER.name()).toString());
+        Label elementLabel = Label.label(config.getOrDefault("elementLabel", "Character").toString());
+        return locate(root, position, relationshipType, elementLabel);
+    }
+
+    @Procedure(mode = Mode.READ)
+    public Stream<ResultTypes.NodeResult> range(
+            @Name("root of the chain, either a node pointing to the first element or the first element itself") Node root,
+            @Name("position of the first element (inclusive)") long from,
+            @Name("position of the last element (exclusive)") long to,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", REL_NEXT_CHARACTER.name()).toString());
+        Label elementLabel = Label.label(config.getOrDefault("elementLabel", "Character").toString());
+        Node first = locate(root, Math.max(from, 0), relationshipType, elementLabel);
+        if (first == null || to <= from) {
+            return Stream.empty();
         }
-        Path build = builder.build();
-        return build;
+        // a root which is the first element holds no log, the offsets are returned as stored then
+        OffsetLog offsetLog = OffsetLog.read(root, relationshipType);
+        return Stream.iterate(first, Objects::nonNull, node -> advance(relationshipType, node))
+                .limit(to - Math.max(from, 0))
+                .map(node -> new ResultTypes.NodeResult(node, offsetLog.offsets(node)));
+    }
+
+    /**
+     * find a chain element by position, using the root's {@link ChainIndex} if present
+     */
+    private Node locate(Node root, long position, RelationshipType relationshipType, Label elementLabel) {
+        ChainIndex chainIndex = ChainIndex.read(root);
+        if (chainIndex != null) {
+            return chainIndex.nodeAt(tx, root, position, relationshipType, elementLabel);
+        }
+        if (position < 0) {
+            return null;
+        }
+        Node node = ChainIndex.firstElement(root, relationshipType, elementLabel);
+        for (long i = 0; node != null && i < position; i++) {
+            node = advance(relationshipType, node);
+        }
+        return node;
     }
 
     @Procedure(mode = Mode.WRITE)
-    public Stream<ResultTypes.PathResult> update(
+    public Stream<BatchResult> characterChainBatched(
+            @Name("string to be used for building a chain of nodes") String text,
+            @Name(value = "number of characters to be committed per transaction", defaultValue = "10000") long batchSize,
+            @Name(value = "whether to add startIndex/endIndex properties", defaultValue = "true") boolean applyIndexProperties) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        ChainWriter writer = new ChainWriter(null, Label.label("Character"), REL_NEXT_CHARACTER, applyIndexProperties);
+
+        Iterator<BatchResult> batches = new Iterator<>() {
+            private long batch = 0;
+
+            @Override
+            public boolean hasNext() {
+                return writer.index() < text.length();
+            }
+
+            @Override
+            public BatchResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long before = writer.count();
+                String firstElementId;
+                String lastElementId;
+                try (Transaction innerTx = db.beginTx()) {
+                    writer.rebind(innerTx);
+                    int end = (int) Math.min(text.length(), writer.index() + batchSize);
+                    firstElementId = writer.append(Character.toString(text.charAt(writer.index()))).getElementId();
+                    while (writer.index() < end) {
+                        writer.append(Character.toString(text.charAt(writer.index())));
+                    }
+                    lastElementId = writer.last().getElementId();
+                    innerTx.commit();
+                }
+                log.info("characterChainBatched: committed batch {}, {} of {} characters", batch, writer.index(), text.length());
+                return new BatchResult(batch++, writer.count() - before, writer.count(),
+                        tx.getNodeByElementId(firstElementId), tx.getNodeByElementId(lastElementId));
+            }
+        };
+        return Iterators.stream(batches);
+    }
+
+    @UserFunction
+    public Map<String, Object> offsets(
+            @Name("text node holding the offset log") Node text,
+            @Name("chain element") Node node,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", REL_NEXT_CHARACTER.name()).toString());
+        long[] offsets = OffsetLog.read(text, relationshipType).offsets(node);
+        return offsets == null ? null : Map.of(PROPERTY_START_INDEX, offsets[0], PROPERTY_END_INDEX, offsets[1]);
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public void reindex(
+            @Name("text node holding the offset log") Node text,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", REL_NEXT_CHARACTER.name()).toString());
+        Label elementLabel = Label.label(config.getOrDefault("elementLabel", "Character").toString());
+        long count = OffsetLog.reindex(text, relationshipType, elementLabel);
+        log.info("reindex: rewrote offsets of {} elements", count);
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<ResultTypes.UpdateResult> update(
             @Name("uuid of text node") String uuidText,
             @Name("uuid of chain element before update") String uuidBefore,
             @Name("uuid of chain element after update") String uuidAfter,
             @Name("chain fragment to replace everything between uuidBefore and uuidAfter") List<Map<String, Object>> replacement,
-            @Name(value = "configuration", defaultValue = "{}") Map<String, String> config) {
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
         String uuidProperty = "uuid";
-        Label textLabel = Label.label(config.getOrDefault("textLabel", "Text"));
-        Label characterLabel = Label.label(config.getOrDefault("elementLabel", "Character"));
-        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", "NEXT_CHARACTER"));
-        Node textNode = tx.findNode(textLabel, uuidProperty, uuidText);
-        Node beforeNode = findNodeOrThrow(characterLabel, uuidProperty, uuidBefore);
-        Node afterNode = findNodeOrThrow(characterLabel, uuidProperty, uuidAfter);
-
-        if ((beforeNode!=null) && beforeNode.equals(afterNode)) {
-            throw new IllegalArgumentException("beforeNode and afterNode must be different");
-        }
-
-        Map<String, Node> existingNodes = getExistingNodesBetween(textNode, beforeNode, afterNode, relationshipType, uuidProperty);
-
-        Node currentNode = beforeNode == null ? textNode : beforeNode;
-        PathImpl.Builder builder = null;
-        boolean isFirst = true;
-
-        for (Map<String, Object> data: replacement) {
-            String uuid = Optional.ofNullable(data.get("uuid")).orElseThrow(() -> new IllegalArgumentException("uuid property is required")).toString();
-
-            Node existingNode = existingNodes.remove(uuid);
-            Relationship currentRelationship;
-            if (existingNode == null) {
-                Node newNode = tx.createNode(characterLabel);
-                currentRelationship = currentNode.createRelationshipTo(newNode, relationshipType);
-                currentNode = newNode;
-            } else {
-                Relationship existingRelationship = existingNode.getSingleRelationship(relationshipType, Direction.INCOMING);
-                Node existingPrevious = existingRelationship.getStartNode();
-                if (existingPrevious.equals(currentNode)) {
-                    currentRelationship = existingRelationship;
-                } else {
-                    existingRelationship.delete();
-                    currentRelationship = currentNode.createRelationshipTo(existingNode, relationshipType);
-                }
-                currentNode = existingNode;
-            }
-            for (Map.Entry<String, Object> e: data.entrySet()) {
-                currentNode.setProperty(e.getKey(), e.getValue());
-            }
+        Label textLabel = Label.label(config.getOrDefault("textLabel", "Text").toString());
+        Label characterLabel = Label.label(config.getOrDefault("elementLabel", "Character").toString());
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", "NEXT_CHARACTER").toString());
+        int maxOffsetLogSize = ((Number) config.getOrDefault("maxOffsetLogSize", DEFAULT_MAX_OFFSET_LOG_SIZE)).intValue();
+        boolean offsetLog = !Boolean.FALSE.equals(config.get("offsetLog"));
+        Node textNode = NodeLookup.of(db, tx, log, textLabel, uuidProperty).find(uuidText);
+        NodeLookup elements = NodeLookup.of(db, tx, log, characterLabel, uuidProperty);
+        Node beforeNode = findNodeOrThrow(elements, uuidBefore);
+        Node afterNode = findNodeOrThrow(elements, uuidAfter);
+
+        ChainUpdater updater = new ChainUpdater(tx, textNode, characterLabel, relationshipType, uuidProperty, offsetLog, maxOffsetLogSize);
+        ResultTypes.UpdateResult result = updater.replace(beforeNode, afterNode, replacement);
+        updater.finish();
+        return Stream.of(result);
+    }
 
-            if (isFirst) {
-                builder = new PathImpl.Builder(currentNode);
-                isFirst = false;
-            } else {
-                builder = builder.push(currentRelationship);
-            }
+    @Procedure(mode = Mode.WRITE)
+    public Stream<ResultTypes.UpdateResult> updateBatch(
+            @Name("uuid of text node") String uuidText,
+            @Name("list of operations, each a map with uuidBefore, uuidAfter and replacement like for update") List<Map<String, Object>> operations,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        String uuidProperty = "uuid";
+        Label textLabel = Label.label(config.getOrDefault("textLabel", "Text").toString());
+        Label characterLabel = Label.label(config.getOrDefault("elementLabel", "Character").toString());
+        RelationshipType relationshipType = RelationshipType.withName(config.getOrDefault("relationshipType", "NEXT_CHARACTER").toString());
+        int maxOffsetLogSize = ((Number) config.getOrDefault("maxOffsetLogSize", DEFAULT_MAX_OFFSET_LOG_SIZE)).intValue();
+        boolean offsetLog = !Boolean.FALSE.equals(config.get("offsetLog"));
+        Node textNode = NodeLookup.of(db, tx, log, textLabel, uuidProperty).find(uuidText);
+
+        Set<String> uuids = new HashSet<>();
+        for (Map<String, Object> operation: operations) {
+            uuids.add(Objects.toString(operation.get("uuidBefore"), ""));
+            uuids.add(Objects.toString(operation.get("uuidAfter"), ""));
+        }
+        uuids.remove("");
+        Map<String, Node> nodesByUuid = findNodes(NodeLookup.of(db, tx, log, characterLabel, uuidProperty), characterLabel, uuidProperty, uuids);
+
+        ChainUpdater updater = new ChainUpdater(tx, textNode, characterLabel, relationshipType, uuidProperty, offsetLog, maxOffsetLogSize);
+        List<ChainUpdater.Fragment> fragments = new ArrayList<>(operations.size());
+        for (Map<String, Object> operation: operations) {
+            fragments.add(updater.fragment(
+                    nodesByUuid.get(Objects.toString(operation.get("uuidBefore"), "")),
+                    nodesByUuid.get(Objects.toString(operation.get("uuidAfter"), ""))));
         }
+        ChainUpdater.checkDisjoint(fragments);
 
-        // remove leftover nodes
-        for (Node n: existingNodes.values()) {
-            n.getRelationships().forEach(Relationship::delete);
-            n.delete();
+        List<ResultTypes.UpdateResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> replacement = (List<Map<String, Object>>) operations.get(i).getOrDefault("replacement", Collections.emptyList());
+            results.add(updater.replace(fragments.get(i), replacement));
         }
+        updater.finish();
+        return results.stream();
+    }
 
-        // ensure last node is connected to afterNode
-        if ((!currentNode.hasRelationship(Direction.OUTGOING, relationshipType)) && (afterNode!=null)) {
-            Relationship r = afterNode.getSingleRelationship(relationshipType, Direction.INCOMING);
-            if (r!=null) {
-                r.delete();
+    /**
+     * look up all nodes for the given uuids in a single query
+     * @throws IllegalArgumentException if any of them does not exist
+     */
+    private Map<String, Node> findNodes(NodeLookup lookup, Label label, String uuidProperty, Set<String> uuids) {
+        Map<String, Node> nodes = new HashMap<>();
+        if (uuids.isEmpty()) {
+            return nodes;
+        }
+        String query = "MATCH (n:`%s`) WHERE n.`%s` IN $uuids RETURN n".formatted(label.name(), uuidProperty);
+        try (Result result = tx.execute(query, Map.of("uuids", List.copyOf(uuids)))) {
+            result.<Node>columnAs("n").forEachRemaining(node -> {
+                nodes.put((String) node.getProperty(uuidProperty), node);
+            });
+        }
+        for (String uuid: uuids) {
+            if (!nodes.containsKey(uuid)) {
+                throw new IllegalArgumentException("couldn't find node with %s".formatted(lookup.describe(uuid)));
             }
-            currentNode.createRelationshipTo(afterNode, relationshipType);
         }
-        return builder == null ? Stream.empty() : asPathResult(builder.build());
+        return nodes;
     }
 
-    private Node findNodeOrThrow(Label textLabel, String uuidProperty, String uuidText) {
-        if ((uuidText == null) || (uuidText.isEmpty())) {
+    private static Node findNodeOrThrow(NodeLookup lookup, String uuid) {
+        if ((uuid == null) || (uuid.isEmpty())) {
             return null;
         }
-        Node node = tx.findNode(textLabel, uuidProperty, uuidText);
+        Node node = lookup.find(uuid);
         if (node==null) {
-            throw new IllegalArgumentException("couldn't find node with label %s and property %s=%s".formatted(textLabel, uuidProperty, uuidText));
+            throw new IllegalArgumentException("couldn't find node with %s".formatted(lookup.describe(uuid)));
         }
         return node;
     }
 
-    private Map<String, Node> getExistingNodesBetween(Node textNode, Node beforeNode, Node afterNode, RelationshipType relationshipType, String uuidProperty) {
-        Node currentNode = beforeNode == null ? textNode : beforeNode;
-        currentNode = advance(relationshipType, currentNode);
-
-        if (currentNode == null) {
-            return Collections.emptyMap();
-        }
-
-        Map<String, Node> existingNodes = new HashMap<>();
-        while (currentNode != null && !currentNode.equals(afterNode)) {
-            existingNodes.put((String) currentNode.getProperty(uuidProperty), currentNode);
-            currentNode = advance(relationshipType, currentNode);
-        }
-        return existingNodes;
-    }
-
-    private static Node advance(RelationshipType relationshipType, Node startNode) {
+    static Node advance(RelationshipType relationshipType, Node startNode) {
         Relationship singleRelationship = startNode.getSingleRelationship(relationshipType, Direction.OUTGOING);
         return singleRelationship == null ? null : singleRelationship.getEndNode();
     }
 
-    private static Stream<ResultTypes.PathResult> asPathResult(Path path) {
-        return Stream.of(new ResultTypes.PathResult(path));
-    }
-
 }
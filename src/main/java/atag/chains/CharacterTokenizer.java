@@ -0,0 +1,35 @@
+package atag.chains;
+
+/**
+ * one segment per character, equivalent to {@code text.split("")}
+ */
+class CharacterTokenizer implements Tokenizer {
+
+    @Override
+    public Cursor tokenize(String text) {
+        return new Cursor() {
+            // an empty text yields a single empty segment, as String.split does
+            private int start = -1;
+            private final int length = text.length();
+
+            @Override
+            public boolean next() {
+                if (start + 1 < length || (start == -1 && length == 0)) {
+                    start++;
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public int start() {
+                return start;
+            }
+
+            @Override
+            public int end() {
+                return Math.min(start + 1, length);
+            }
+        };
+    }
+}
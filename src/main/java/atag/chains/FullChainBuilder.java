@@ -0,0 +1,83 @@
+package atag.chains;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * builds token chain and character chain of a text in a single scan.
+ * Characters are written token by token, so the first and last character of a token are known right away
+ * when creating TOKEN_START/TOKEN_END. Neither the chains nor any properties have to be read back.
+ */
+public class FullChainBuilder {
+
+    private final Tokenizer tokenizer;
+    private final boolean applyIndexProperties;
+    private final int indexStride;
+
+    private long characterCount;
+    private long tokenCount;
+
+    /**
+     * @param tokenizer tokenizer used for the token chain
+     * @param applyIndexProperties whether to add startIndex/endIndex properties to character nodes,
+     *                             token nodes always get them
+     * @param indexStride distance between checkpoints of a {@link ChainIndex} for the character chain
+     *                    stored on the start node, 0 for no index
+     */
+    public FullChainBuilder(Tokenizer tokenizer, boolean applyIndexProperties, int indexStride) {
+        this.tokenizer = tokenizer;
+        this.applyIndexProperties = applyIndexProperties;
+        this.indexStride = indexStride;
+    }
+
+    /**
+     * create both chains for a text and attach them to the start node
+     * @param tx transaction to be used
+     * @param start start node, gets NEXT_CHARACTER and NEXT_TOKEN relationships to the heads of the chains
+     * @param text the text
+     */
+    public void build(Transaction tx, Node start, String text) {
+        ChainWriter characters = new ChainWriter(tx, Label.label("Character"), ChainsProcedure.REL_NEXT_CHARACTER, applyIndexProperties)
+                .withIndex(indexStride);
+        ChainWriter tokens = new ChainWriter(tx, Label.label("Token"), ChainsProcedure.REL_NEXT_TOKEN, true);
+
+        Tokenizer.Cursor cursor = tokenizer.tokenize(text);
+        while (cursor.next()) {
+            int tokenStart = cursor.start();
+            int tokenEnd = cursor.end();
+            if (tokenStart == tokenEnd) {
+                continue;
+            }
+            Node token = tokens.append(text.substring(tokenStart, tokenEnd));
+            Node firstCharacter = characters.append(Character.toString(text.charAt(tokenStart)));
+            for (int i = tokenStart + 1; i < tokenEnd; i++) {
+                characters.append(Character.toString(text.charAt(i)));
+            }
+            token.createRelationshipTo(firstCharacter, ChainsProcedure.REL_TOKEN_START);
+            token.createRelationshipTo(characters.last(), ChainsProcedure.REL_TOKEN_END);
+        }
+
+        if (characters.first() != null) {
+            start.createRelationshipTo(characters.first(), ChainsProcedure.REL_NEXT_CHARACTER);
+            start.createRelationshipTo(tokens.first(), ChainsProcedure.REL_NEXT_TOKEN);
+        }
+        characters.writeIndex(start);
+        characterCount = characters.count();
+        tokenCount = tokens.count();
+    }
+
+    /**
+     * @return number of character nodes created by the last {@link #build(Transaction, Node, String)}
+     */
+    public long characterCount() {
+        return characterCount;
+    }
+
+    /**
+     * @return number of token nodes created by the last {@link #build(Transaction, Node, String)}
+     */
+    public long tokenCount() {
+        return tokenCount;
+    }
+}
@@ -0,0 +1,154 @@
+package atag.chains;
+
+import org.neo4j.graphdb.*;
+
+import java.util.Arrays;
+
+/**
+ * log of offset shifts caused by {@link ChainsProcedure#update} unless called with {@code offsetLog: false},
+ * stored as properties on the text node.
+ * Instead of rewriting {@code startIndex/endIndex} of every element behind an edit, an edit appends a single entry:
+ * elements starting at or behind {@code threshold} move by {@code delta}. Each element remembers how many entries
+ * were already applied to its stored offsets in {@link #PROPERTY_VERSION}, elements without that property are at version 0.
+ * The current offsets of an element are obtained by applying the remaining entries in order.
+ * <b>The stored properties of elements behind an edit are stale while the log is not empty</b>, they must be read
+ * through {@link #offsets(Node)}, i.e. {@code atag.chains.offsets} or the columns of {@code atag.chains.range}.
+ * <p>
+ * The log is kept per relationship type, so the character and token chain of the same text do not interfere.
+ * Once it grows too long, {@link #reindex} rewrites the offsets of the whole chain and clears it.
+ */
+public class OffsetLog {
+
+    public static final String PROPERTY_THRESHOLDS = "offsetLogThresholds";
+    public static final String PROPERTY_DELTAS = "offsetLogDeltas";
+    public static final String PROPERTY_VERSION = "offsetVersion";
+
+    private final String thresholdsKey;
+    private final String deltasKey;
+    private long[] thresholds;
+    private long[] deltas;
+
+    private OffsetLog(RelationshipType relationshipType, long[] thresholds, long[] deltas) {
+        this.thresholdsKey = key(PROPERTY_THRESHOLDS, relationshipType);
+        this.deltasKey = key(PROPERTY_DELTAS, relationshipType);
+        this.thresholds = thresholds;
+        this.deltas = deltas;
+    }
+
+    private static String key(String property, RelationshipType relationshipType) {
+        return property + "_" + relationshipType.name();
+    }
+
+    /**
+     * @return the log stored on the given text node, an empty one if there is none
+     */
+    public static OffsetLog read(Node textNode, RelationshipType relationshipType) {
+        long[] thresholds = (long[]) textNode.getProperty(key(PROPERTY_THRESHOLDS, relationshipType), new long[0]);
+        long[] deltas = (long[]) textNode.getProperty(key(PROPERTY_DELTAS, relationshipType), new long[0]);
+        return new OffsetLog(relationshipType, thresholds, deltas);
+    }
+
+    public void write(Node textNode) {
+        textNode.setProperty(thresholdsKey, thresholds);
+        textNode.setProperty(deltasKey, deltas);
+    }
+
+    /**
+     * @return number of entries, also the version of elements whose offsets are up to date
+     */
+    public int size() {
+        return thresholds.length;
+    }
+
+    /**
+     * @return current {@code startIndex} and {@code endIndex} of a chain element, null if it has no offsets
+     */
+    public long[] offsets(Node node) {
+        Object start = node.getProperty(ChainsProcedure.PROPERTY_START_INDEX, null);
+        if (start == null) {
+            return null;
+        }
+        long startIndex = ((Number) start).longValue();
+        long endIndex = ((Number) node.getProperty(ChainsProcedure.PROPERTY_END_INDEX, startIndex - 1)).longValue();
+        int version = ((Number) node.getProperty(PROPERTY_VERSION, 0)).intValue();
+        for (int i = version; i < thresholds.length; i++) {
+            if (startIndex >= thresholds[i]) {
+                startIndex += deltas[i];
+                endIndex += deltas[i];
+            }
+        }
+        return new long[]{startIndex, endIndex};
+    }
+
+    /**
+     * record that {@code removedLength} characters starting at {@code position} have been replaced by
+     * {@code insertedLength} characters
+     */
+    public void record(long position, long removedLength, long insertedLength) {
+        long delta = insertedLength - removedLength;
+        if (delta == 0) {
+            return;
+        }
+        thresholds = Arrays.copyOf(thresholds, thresholds.length + 1);
+        deltas = Arrays.copyOf(deltas, deltas.length + 1);
+        thresholds[thresholds.length - 1] = position + removedLength;
+        deltas[deltas.length - 1] = delta;
+    }
+
+    /**
+     * set the offsets of an element which are valid for the current state of the log
+     */
+    public void stamp(Node node, long startIndex, long length) {
+        node.setProperty(ChainsProcedure.PROPERTY_START_INDEX, Math.toIntExact(startIndex));
+        node.setProperty(ChainsProcedure.PROPERTY_END_INDEX, Math.toIntExact(startIndex + length - 1));
+        if (thresholds.length == 0) {
+            node.removeProperty(PROPERTY_VERSION);
+        } else {
+            node.setProperty(PROPERTY_VERSION, thresholds.length);
+        }
+    }
+
+    /**
+     * rewrite {@code startIndex/endIndex} of all elements of a chain and clear the log
+     * @return number of elements
+     */
+    public static long reindex(Node textNode, RelationshipType relationshipType, Label elementLabel) {
+        OffsetLog log = new OffsetLog(relationshipType, new long[0], new long[0]);
+        long offset = 0;
+        long count = 0;
+        for (Node node = ChainIndex.firstElement(textNode, relationshipType, elementLabel); node != null;
+             node = ChainsProcedure.advance(relationshipType, node)) {
+            long length = textLength(node);
+            log.stamp(node, offset, length);
+            offset += length;
+            count++;
+        }
+        textNode.removeProperty(log.thresholdsKey);
+        textNode.removeProperty(log.deltasKey);
+        return count;
+    }
+
+    /**
+     * move {@code startIndex/endIndex} of an element and all elements behind it by {@code delta}
+     */
+    static void shift(Node from, RelationshipType relationshipType, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        for (Node node = from; node != null; node = ChainsProcedure.advance(relationshipType, node)) {
+            Object start = node.getProperty(ChainsProcedure.PROPERTY_START_INDEX, null);
+            if (start != null) {
+                node.setProperty(ChainsProcedure.PROPERTY_START_INDEX, Math.toIntExact(((Number) start).longValue() + delta));
+            }
+            Object end = node.getProperty(ChainsProcedure.PROPERTY_END_INDEX, null);
+            if (end != null) {
+                node.setProperty(ChainsProcedure.PROPERTY_END_INDEX, Math.toIntExact(((Number) end).longValue() + delta));
+            }
+        }
+    }
+
+    static long textLength(Node node) {
+        Object text = node.getProperty("text", null);
+        return text == null ? 0 : text.toString().length();
+    }
+}
@@ -0,0 +1,116 @@
+package atag.chains;
+
+import atag.util.CacheStats;
+import atag.util.LruCache;
+
+import java.util.ArrayDeque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * splits a text by a separator pattern with the semantics of {@link String#split(String)}
+ * (no leading empty segment for a zero-width match, trailing empty segments removed),
+ * but hands out the segments lazily. Compiled patterns are shared by all threads, the least recently used ones
+ * are evicted once {@value #MAX_CACHED_PATTERNS} are cached.
+ */
+class RegexTokenizer implements Tokenizer {
+
+    private static final int MAX_CACHED_PATTERNS = 128;
+    private static final CacheStats stats = CacheStats.register("chains.regex", MAX_CACHED_PATTERNS);
+    private static final LruCache<String, Pattern> patterns = new LruCache<>(stats);
+
+    private final Pattern pattern;
+
+    private RegexTokenizer(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    static RegexTokenizer of(String regex) {
+        Pattern pattern;
+        synchronized (patterns) {
+            pattern = patterns.get(regex);
+        }
+        if (pattern == null) {
+            // compiled outside of the lock like in XsltCache, a pattern missed by two threads is compiled twice
+            pattern = Pattern.compile(regex);
+            synchronized (patterns) {
+                patterns.put(regex, pattern);
+            }
+        }
+        return new RegexTokenizer(pattern);
+    }
+
+    @Override
+    public Cursor tokenize(String text) {
+        return new Cursor() {
+            private final Matcher matcher = pattern.matcher(text);
+            // empty segments are only handed out once a non-empty segment follows
+            private final ArrayDeque<Integer> emptySegments = new ArrayDeque<>();
+            private int index = 0;
+            private boolean matched = false;
+            private boolean exhausted = false;
+            private int pendingStart = -1;
+            private int pendingEnd;
+            private int start;
+            private int end;
+
+            @Override
+            public boolean next() {
+                if (pendingStart >= 0) {
+                    if (!emptySegments.isEmpty()) {
+                        start = end = emptySegments.poll();
+                    } else {
+                        start = pendingStart;
+                        end = pendingEnd;
+                        pendingStart = -1;
+                    }
+                    return true;
+                }
+                while (!exhausted) {
+                    int segmentStart = index;
+                    int segmentEnd;
+                    if (matcher.find()) {
+                        if (index == 0 && matcher.start() == 0 && matcher.end() == 0) {
+                            continue;
+                        }
+                        segmentEnd = matcher.start();
+                        index = matcher.end();
+                        matched = true;
+                    } else {
+                        exhausted = true;
+                        segmentEnd = text.length();
+                        if (!matched) {
+                            // no match at all: the whole text is the only segment, even if empty
+                            start = 0;
+                            end = segmentEnd;
+                            return true;
+                        }
+                    }
+                    if (segmentStart == segmentEnd) {
+                        emptySegments.add(segmentStart);
+                    } else if (emptySegments.isEmpty()) {
+                        start = segmentStart;
+                        end = segmentEnd;
+                        return true;
+                    } else {
+                        pendingStart = segmentStart;
+                        pendingEnd = segmentEnd;
+                        start = end = emptySegments.poll();
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public int start() {
+                return start;
+            }
+
+            @Override
+            public int end() {
+                return end;
+            }
+        };
+    }
+}
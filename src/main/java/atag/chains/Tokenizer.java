@@ -0,0 +1,33 @@
+package atag.chains;
+
+/**
+ * splits a text into consecutive segments. Segments are handed out one at a time
+ * via a {@link Cursor}, so no intermediate array of all tokens is required.
+ * See {@link Tokenizers} for the available implementations.
+ */
+public interface Tokenizer {
+
+    Cursor tokenize(String text);
+
+    /**
+     * iterates over the segments of a text, each segment is described by its offsets
+     */
+    interface Cursor {
+
+        /**
+         * advance to the next segment
+         * @return false if there are no more segments
+         */
+        boolean next();
+
+        /**
+         * @return start offset (inclusive) of the current segment
+         */
+        int start();
+
+        /**
+         * @return end offset (exclusive) of the current segment
+         */
+        int end();
+    }
+}
@@ -0,0 +1,63 @@
+package atag.chains;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * factory for the {@link Tokenizer} implementations used by the chain procedures
+ */
+public final class Tokenizers {
+
+    private static final Tokenizer CHARACTERS = new CharacterTokenizer();
+    private static final Tokenizer WORDS = new WordTokenizer();
+
+    private Tokenizers() {
+    }
+
+    /**
+     * @return a tokenizer creating one segment per (UTF-16) character
+     */
+    public static Tokenizer characters() {
+        return CHARACTERS;
+    }
+
+    /**
+     * @return a tokenizer creating one segment per run of word characters and one per other character,
+     * equivalent to splitting by {@code (?U)((?<=\W)|(?=\W))}
+     */
+    public static Tokenizer words() {
+        return WORDS;
+    }
+
+    /**
+     * @param regex separator pattern, with the same semantics as {@link String#split(String)}
+     * @return a tokenizer using a cached compiled version of the given pattern
+     */
+    public static Tokenizer regex(String regex) {
+        return RegexTokenizer.of(regex);
+    }
+
+    /**
+     * @param locale locale used for detecting word boundaries
+     * @return a tokenizer based on {@link java.text.BreakIterator#getWordInstance(Locale)}
+     */
+    public static Tokenizer breakIterator(Locale locale) {
+        return new BreakIteratorTokenizer(locale);
+    }
+
+    /**
+     * resolve a tokenizer by name as used in procedure configuration maps
+     * @param name one of {@code word}, {@code regex}, {@code breakIterator}
+     * @param regex pattern to be used for {@code regex}
+     * @param config further settings, {@code locale} is used for {@code breakIterator}
+     */
+    static Tokenizer forName(String name, String regex, Map<String, Object> config) {
+        return switch (name) {
+            case "word" -> words();
+            case "regex" -> regex(regex);
+            case "breakIterator" -> breakIterator(Locale.forLanguageTag(config.getOrDefault("locale", "und").toString()));
+            default -> throw new IllegalArgumentException(
+                    "unknown tokenizer '%s', must be one of word, regex, breakIterator".formatted(name));
+        };
+    }
+}
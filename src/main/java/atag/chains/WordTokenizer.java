@@ -0,0 +1,71 @@
+package atag.chains;
+
+/**
+ * hand-written scanner producing one segment per run of word characters and one segment per other code point.
+ * This is equivalent to {@code text.split("(?U)((?<=\\W)|(?=\\W))")} but neither needs a regex engine nor
+ * an intermediate array. Unlike the regex, a non-word supplementary character is kept as one segment
+ * instead of being split into its surrogates.
+ */
+class WordTokenizer implements Tokenizer {
+
+    @Override
+    public Cursor tokenize(String text) {
+        return new Cursor() {
+            private final int length = text.length();
+            private int start = -1;
+            private int end = 0;
+
+            @Override
+            public boolean next() {
+                if (length == 0) {
+                    // an empty text yields a single empty segment, as String.split does
+                    if (start == -1) {
+                        start = 0;
+                        return true;
+                    }
+                    return false;
+                }
+                if (end >= length) {
+                    return false;
+                }
+                start = end;
+                int codePoint = text.codePointAt(end);
+                end += Character.charCount(codePoint);
+                if (isWordCharacter(codePoint)) {
+                    while (end < length && isWordCharacter(codePoint = text.codePointAt(end))) {
+                        end += Character.charCount(codePoint);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public int start() {
+                return start;
+            }
+
+            @Override
+            public int end() {
+                return end;
+            }
+        };
+    }
+
+    /**
+     * same definition as {@code \w} with {@link java.util.regex.Pattern#UNICODE_CHARACTER_CLASS}
+     */
+    static boolean isWordCharacter(int codePoint) {
+        if (codePoint < 128) {
+            return (codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z')
+                    || (codePoint >= '0' && codePoint <= '9') || codePoint == '_';
+        }
+        if (Character.isAlphabetic(codePoint)) {
+            return true;
+        }
+        return switch (Character.getType(codePoint)) {
+            case Character.NON_SPACING_MARK, Character.ENCLOSING_MARK, Character.COMBINING_SPACING_MARK,
+                 Character.DECIMAL_DIGIT_NUMBER, Character.CONNECTOR_PUNCTUATION -> true;
+            default -> codePoint == 0x200C || codePoint == 0x200D; // join controls
+        };
+    }
+}
@@ -1,11 +1,9 @@
 package atag.importer;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.TextNode;
 import org.neo4j.configuration.Config;
 import org.neo4j.configuration.GraphDatabaseSettings;
-import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
@@ -16,9 +14,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public class ImportProcedures {
@@ -42,9 +38,6 @@ public class ImportProcedures {
         }
     }
 
-    private record JsonImportConfig(String propertyKey, List<String> labels, boolean overwrite) {
-    }
-
     @Procedure(value = "atag.import.jgfFile", mode = Mode.WRITE)
     @Description("Import a graph from a JGF file")
     public Stream<GraphResult> jgfFile(@Name("filename") String fileName, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
@@ -71,130 +64,10 @@ public class ImportProcedures {
             ObjectMapper mapper = new ObjectMapper();
 
             config.putIfAbsent("overwrite", false); // default behaviour
-            JsonImportConfig jsonImportConfig = mapper.convertValue(config, JsonImportConfig.class);
-            List<String> configLabels = jsonImportConfig.labels() == null ? List.of() : jsonImportConfig.labels();
-
-            JsonNode root = mapper.readTree(inputStream);
-
-            JsonNode graph = root.get("graph");
-            JsonNode nodes = graph.get("nodes");
-            JsonNode edges = graph.get("edges");
-
-            Map<String, Node> nodeMap = new HashMap<>();
-            AtomicLong createdNodes = new AtomicLong(0);
-            AtomicLong createdRelationships = new AtomicLong(0);
-
-            // Create nodes
-            nodes.fields().forEachRemaining(entry -> {
-                String nodeId = entry.getKey();
-                JsonNode nodeData = entry.getValue();
-
-                List<String> labels = Arrays.asList(nodeData.get("label").asText().split(","));
-                JsonNode metadata = nodeData.get("metadata");
-
-                Optional<Label> mergeLabel = configLabels.stream().filter(labels::contains).map(Label::label).findFirst();
-
-                Node node = null;
-                boolean nodeCreated = false;
-                if (mergeLabel.isPresent()) {
-                    TextNode valueNode = getProperty(metadata, jsonImportConfig.propertyKey);
-                    String value = valueNode.asText();
-                    node = tx.findNode(mergeLabel.get(), jsonImportConfig.propertyKey, value);
-                    if (node == null) {
-                        log.info("couldn't find node with label {} and {} = {}", mergeLabel, jsonImportConfig.propertyKey, value);
-                    }
-                }
-                if (node == null) {
-                    node = tx.createNode();
-                    nodeCreated = true;
-                    createdNodes.incrementAndGet();
-                }
-
-                if (nodeCreated || jsonImportConfig.overwrite) {
-                    for (String label : labels) {
-                        node.addLabel(Label.label(label));
-                    }
-                    addProperties(node, metadata);
-                }
-                nodeMap.put(nodeId, node);
-            });
-
-            // Create relationships
-            edges.forEach(edge -> {
-                String sourceId = edge.get("source").asText();
-                String targetId = edge.get("target").asText();
-                String relationType = edge.get("relation").asText();
-
-                Node sourceNode = nodeMap.get(sourceId);
-                Node targetNode = nodeMap.get(targetId);
-                RelationshipType relationshipType = RelationshipType.withName(relationType);
-
-                Relationship rel = relationshipBetween(sourceNode, targetNode, relationshipType);
-                if (rel == null) {
-                    rel = sourceNode.createRelationshipTo(targetNode, relationshipType);
-                    createdRelationships.incrementAndGet();
-                }
-                if (edge.has("metadata")) {
-                    addProperties(rel, edge.get("metadata"));
-                }
-            });
-            return new GraphResult(createdNodes.get(), createdRelationships.get());
+            JgfImporter.JsonImportConfig jsonImportConfig = mapper.convertValue(config, JgfImporter.JsonImportConfig.class);
+            return new JgfImporter(graphDatabaseAPI, tx, log, jsonImportConfig).importJgf(mapper, inputStream);
         } catch (IOException e) {
             throw new RuntimeException("Failed to parse JGF input", e);
         }
     }
-
-    /**
-     * find first relationship between nodes efficiently
-     * traverses from less connected node to more connected node
-     * @param sourceNode
-     * @param targetNode
-     * @param relationshipType
-     * @return
-     */
-    private Relationship relationshipBetween(Node sourceNode, Node targetNode, RelationshipType relationshipType) {
-        int sourceDegree = sourceNode.getDegree(relationshipType, Direction.OUTGOING);
-        int targetDegree = targetNode.getDegree(relationshipType, Direction.INCOMING);
-
-        Node from = sourceDegree <= targetDegree ? sourceNode : targetNode;
-        Node to = sourceDegree <= targetDegree ? targetNode : sourceNode;
-        Direction direction = sourceDegree <= targetDegree ? Direction.OUTGOING : Direction.INCOMING;
-
-        return from.getRelationships(direction, relationshipType).stream()
-                .filter(relationship -> relationship.getOtherNode(from).equals(to))
-                .findFirst().orElse(null);
-    }
-
-    private TextNode getProperty(JsonNode nodeData, String propertyKey) {
-        return (TextNode) nodeData.get(propertyKey);
-    }
-
-    private void addProperties(Entity entity, JsonNode metadata) {
-        metadata.fields().forEachRemaining(entry -> {
-            String key = entry.getKey();
-            JsonNode value = entry.getValue();
-
-            if (value.isTextual()) {
-                try {
-                    LocalDate date = LocalDate.parse(value.asText());
-                    entity.setProperty(key, date);
-                } catch (Exception e) {
-                    entity.setProperty(key, value.asText());
-                }
-            } else if (value.isInt()) {
-                entity.setProperty(key, value.asInt());
-            } else if (value.isLong()) {
-                entity.setProperty(key, value.asLong());
-            } else if (value.isDouble()) {
-                entity.setProperty(key, value.asDouble());
-            } else if (value.isBoolean()) {
-                entity.setProperty(key, value.asBoolean());
-            } else if (value.isArray()) {
-                List<String> list = new ArrayList<>();
-                value.elements().forEachRemaining(element -> list.add(element.asText()));
-                entity.setProperty(key, list.toArray(new String[0]));
-            }
-        });
-    }
 }
-
@@ -0,0 +1,245 @@
+package atag.importer;
+
+import atag.util.NodeLookup;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.neo4j.graphdb.*;
+import org.neo4j.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * imports a graph in JSON Graph Format while reading it. Nodes are created while the {@code nodes} object is read,
+ * relationships while the {@code edges} array is read, only a single node or edge is held as a tree at a time.
+ * Apart from that just the ids of the created nodes by their JGF id are kept in a {@link NodeIdMap},
+ * so {@code edges} must follow {@code nodes}.
+ */
+class JgfImporter {
+
+    /**
+     * @param propertyKey property identifying existing nodes with one of the labels
+     * @param labels labels of nodes which are merged with existing ones instead of being created
+     * @param overwrite whether labels and properties of existing nodes are updated
+     * @param idMapHeapLimit bytes of heap used for node ids before they are kept in a memory-mapped file, null for the default
+     */
+    record JsonImportConfig(String propertyKey, List<String> labels, boolean overwrite, Long idMapHeapLimit) {
+    }
+
+    static final long DEFAULT_ID_MAP_HEAP_LIMIT = 64L << 20;
+
+    private final GraphDatabaseService db;
+    private final Transaction tx;
+    private final Log log;
+    private final JsonImportConfig config;
+    private final List<String> configLabels;
+
+    private NodeIdMap nodeIds;
+    private final Map<Label, NodeLookup> lookups = new HashMap<>();
+    private long createdNodes;
+    private long createdRelationships;
+
+    JgfImporter(GraphDatabaseService db, Transaction tx, Log log, JsonImportConfig config) {
+        this.db = db;
+        this.tx = tx;
+        this.log = log;
+        this.config = config;
+        this.configLabels = config.labels() == null ? List.of() : config.labels();
+    }
+
+    ImportProcedures.GraphResult importJgf(ObjectMapper mapper, InputStream inputStream) throws IOException {
+        boolean found = false;
+        long heapLimit = config.idMapHeapLimit() == null ? DEFAULT_ID_MAP_HEAP_LIMIT : config.idMapHeapLimit();
+        if (heapLimit < 0) {
+            throw new IllegalArgumentException("idMapHeapLimit must not be negative");
+        }
+        try (JsonParser parser = mapper.createParser(inputStream);
+             NodeIdMap ids = new NodeIdMap(heapLimit)) {
+            nodeIds = ids;
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if (name.equals("graph")) {
+                    readGraph(parser);
+                    found = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (ids.spilled()) {
+                log.info("JGF import: ids of {} nodes exceeded idMapHeapLimit {} and were partly kept in a memory-mapped file",
+                        ids.size(), heapLimit);
+            }
+        } finally {
+            nodeIds = null;
+        }
+        if (!found) {
+            throw new IllegalArgumentException("JGF input contains no graph");
+        }
+        return new ImportProcedures.GraphResult(createdNodes, createdRelationships);
+    }
+
+    private void readGraph(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "nodes" -> {
+                    expect(parser, token, JsonToken.START_OBJECT);
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String nodeId = parser.currentName();
+                        parser.nextToken();
+                        importNode(nodeId, parser.readValueAsTree());
+                    }
+                }
+                case "edges" -> {
+                    expect(parser, token, JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        importEdge(parser.readValueAsTree());
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) {
+        if (actual != expected) {
+            throw new IllegalArgumentException("invalid JGF input: expected %s but found %s at %s"
+                    .formatted(expected, actual, parser.currentLocation().offsetDescription()));
+        }
+    }
+
+    private void importNode(String nodeId, JsonNode nodeData) {
+        List<String> labels = Arrays.asList(nodeData.get("label").asText().split(","));
+        JsonNode metadata = nodeData.get("metadata");
+
+        Optional<Label> mergeLabel = configLabels.stream().filter(labels::contains).map(Label::label).findFirst();
+
+        Node node = null;
+        boolean nodeCreated = false;
+        if (mergeLabel.isPresent()) {
+            TextNode valueNode = getProperty(metadata, config.propertyKey());
+            String value = valueNode.asText();
+            NodeLookup lookup = lookups.computeIfAbsent(mergeLabel.get(),
+                    label -> NodeLookup.of(db, tx, log, label, config.propertyKey()));
+            node = lookup.find(value);
+            if (node == null) {
+                log.info("couldn't find node with label {} and {} = {}", mergeLabel, config.propertyKey(), value);
+            }
+        }
+        if (node == null) {
+            node = tx.createNode();
+            nodeCreated = true;
+            createdNodes++;
+        }
+
+        if (nodeCreated || config.overwrite()) {
+            for (String label : labels) {
+                node.addLabel(Label.label(label));
+            }
+            addProperties(node, metadata);
+        }
+        nodeIds.put(nodeId, InternalIds.of(node));
+    }
+
+    private void importEdge(JsonNode edge) {
+        Node sourceNode = node(edge.get("source").asText());
+        Node targetNode = node(edge.get("target").asText());
+        RelationshipType relationshipType = RelationshipType.withName(edge.get("relation").asText());
+
+        Relationship rel = relationshipBetween(sourceNode, targetNode, relationshipType);
+        if (rel == null) {
+            rel = sourceNode.createRelationshipTo(targetNode, relationshipType);
+            createdRelationships++;
+        }
+        if (edge.has("metadata")) {
+            addProperties(rel, edge.get("metadata"));
+        }
+    }
+
+    private Node node(String nodeId) {
+        long id = nodeIds.get(nodeId);
+        if (id < 0) {
+            throw new IllegalArgumentException("edge refers to node %s which is not part of the preceding nodes".formatted(nodeId));
+        }
+        return InternalIds.node(tx, id);
+    }
+
+    /**
+     * the only use of internal node ids, which are deprecated in favour of element ids. They are stable within the
+     * transaction of an import and fit into the primitive {@link NodeIdMap}, while an element id takes about 40 bytes
+     * per node. Ids never leave the transaction.
+     */
+    @SuppressWarnings("removal")
+    private static final class InternalIds {
+
+        static long of(Node node) {
+            return node.getId();
+        }
+
+        static Node node(Transaction tx, long id) {
+            return tx.getNodeById(id);
+        }
+    }
+
+    /**
+     * find first relationship between nodes efficiently
+     * traverses from less connected node to more connected node
+     * @param sourceNode
+     * @param targetNode
+     * @param relationshipType
+     * @return
+     */
+    private Relationship relationshipBetween(Node sourceNode, Node targetNode, RelationshipType relationshipType) {
+        int sourceDegree = sourceNode.getDegree(relationshipType, Direction.OUTGOING);
+        int targetDegree = targetNode.getDegree(relationshipType, Direction.INCOMING);
+
+        Node from = sourceDegree <= targetDegree ? sourceNode : targetNode;
+        Node to = sourceDegree <= targetDegree ? targetNode : sourceNode;
+        Direction direction = sourceDegree <= targetDegree ? Direction.OUTGOING : Direction.INCOMING;
+
+        return from.getRelationships(direction, relationshipType).stream()
+                .filter(relationship -> relationship.getOtherNode(from).equals(to))
+                .findFirst().orElse(null);
+    }
+
+    private TextNode getProperty(JsonNode nodeData, String propertyKey) {
+        return (TextNode) nodeData.get(propertyKey);
+    }
+
+    private void addProperties(Entity entity, JsonNode metadata) {
+        metadata.fields().forEachRemaining(entry -> {
+            String key = entry.getKey();
+            JsonNode value = entry.getValue();
+
+            if (value.isTextual()) {
+                try {
+                    LocalDate date = LocalDate.parse(value.asText());
+                    entity.setProperty(key, date);
+                } catch (Exception e) {
+                    entity.setProperty(key, value.asText());
+                }
+            } else if (value.isInt()) {
+                entity.setProperty(key, value.asInt());
+            } else if (value.isLong()) {
+                entity.setProperty(key, value.asLong());
+            } else if (value.isDouble()) {
+                entity.setProperty(key, value.asDouble());
+            } else if (value.isBoolean()) {
+                entity.setProperty(key, value.asBoolean());
+            } else if (value.isArray()) {
+                List<String> list = new ArrayList<>();
+                value.elements().forEachRemaining(element -> list.add(element.asText()));
+                entity.setProperty(key, list.toArray(new String[0]));
+            }
+        });
+    }
+}
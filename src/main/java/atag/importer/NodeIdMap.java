@@ -0,0 +1,241 @@
+package atag.importer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * maps the node ids of a JGF document to the ids of the nodes created for them, without an object per entry.
+ * <p>
+ * Each distinct key is stored once as UTF-8 in an append-only arena. The table uses open addressing with linear
+ * probing, a slot holds two longs: the arena offset of the key together with 24 bits of its hash, which rule out
+ * most mismatches without reading the key, and the node id.
+ * <p>
+ * Memory is allocated in chunks of at most {@value #CHUNK_SIZE} bytes, on the heap until {@code heapLimit} bytes are
+ * in use and memory-mapped from a temporary file beyond that, so large imports do not need a large heap.
+ * The file only grows, tables outgrown by resizing are not reused. It is deleted by {@link #close()}.
+ * Not thread safe.
+ */
+final class NodeIdMap implements AutoCloseable {
+
+    static final int CHUNK_BITS = 20;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int SLOT_SIZE = 16;
+    private static final long INITIAL_SLOTS = 1 << 10;
+    private static final int TAG_BITS = 24;
+    private static final long TAG_MASK = (1L << TAG_BITS) - 1;
+    // hash and length in front of the key bytes
+    private static final int HEADER_SIZE = 8;
+
+    private final long heapLimit;
+    private long heapBytes;
+    private FileChannel file;
+    private long fileLength;
+
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private long arenaEnd;
+
+    private ByteBuffer[] table;
+    private long mask;
+    private long size;
+
+    /**
+     * @param heapLimit number of bytes allocated on the heap before further memory is mapped from a file
+     */
+    NodeIdMap(long heapLimit) {
+        this.heapLimit = heapLimit;
+        this.table = allocateTable(INITIAL_SLOTS);
+        this.mask = INITIAL_SLOTS - 1;
+    }
+
+    /**
+     * @param id a non-negative node id, replaces a previous id of the key
+     */
+    void put(String key, long id) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        long position = find(bytes, hash) * SLOT_SIZE;
+        if (getLong(table, position) == 0) {
+            long offset = append(bytes, hash);
+            putLong(table, position, ((offset + 1) << TAG_BITS) | (hash & TAG_MASK));
+            size++;
+        }
+        putLong(table, position + 8, id);
+        // keep the table at most half full
+        if (size * 2 > mask + 1) {
+            grow();
+        }
+    }
+
+    /**
+     * @return the node id of the key, -1 if the key is unknown
+     */
+    long get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long position = find(bytes, hash(bytes)) * SLOT_SIZE;
+        return getLong(table, position) == 0 ? -1 : getLong(table, position + 8);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return true if memory beyond the heap limit has been mapped from a file
+     */
+    boolean spilled() {
+        return file != null;
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * @return the slot holding the key or the empty slot where it belongs
+     */
+    private long find(byte[] bytes, int hash) {
+        long tag = hash & TAG_MASK;
+        for (long slot = index(hash); ; slot = (slot + 1) & mask) {
+            long keyRef = getLong(table, slot * SLOT_SIZE);
+            if (keyRef == 0 || ((keyRef & TAG_MASK) == tag && keyEquals((keyRef >>> TAG_BITS) - 1, bytes))) {
+                return slot;
+            }
+        }
+    }
+
+    private long index(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 0;
+        for (byte b: bytes) {
+            h = 31 * h + b;
+        }
+        // finalizer of murmur3, spreads similar ids like n1, n2, ... over all bits
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private boolean keyEquals(long offset, byte[] bytes) {
+        ByteBuffer chunk = arena.get((int) (offset >>> CHUNK_BITS));
+        int position = (int) (offset & CHUNK_MASK);
+        if (chunk.getInt(position + 4) != bytes.length) {
+            return false;
+        }
+        position += HEADER_SIZE;
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return offset of the key in the arena, keys never span two chunks
+     */
+    private long append(byte[] bytes, int hash) {
+        int length = HEADER_SIZE + bytes.length;
+        if (length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("node id of %d bytes is too long".formatted(bytes.length));
+        }
+        if (arenaEnd + length > (long) arena.size() << CHUNK_BITS) {
+            arenaEnd = (long) arena.size() << CHUNK_BITS;
+            arena.add(allocate(CHUNK_SIZE));
+        }
+        long offset = arenaEnd;
+        ByteBuffer chunk = arena.get(arena.size() - 1);
+        int position = (int) (offset & CHUNK_MASK);
+        chunk.putInt(position, hash);
+        chunk.putInt(position + 4, bytes.length);
+        chunk.put(position + HEADER_SIZE, bytes);
+        arenaEnd += length;
+        return offset;
+    }
+
+    private void grow() {
+        ByteBuffer[] old = table;
+        long oldSlots = mask + 1;
+        table = allocateTable(oldSlots * 2);
+        mask = oldSlots * 2 - 1;
+        for (long slot = 0; slot < oldSlots; slot++) {
+            long keyRef = getLong(old, slot * SLOT_SIZE);
+            if (keyRef == 0) {
+                continue;
+            }
+            long offset = (keyRef >>> TAG_BITS) - 1;
+            int hash = arena.get((int) (offset >>> CHUNK_BITS)).getInt((int) (offset & CHUNK_MASK));
+            long target = index(hash);
+            while (getLong(table, target * SLOT_SIZE) != 0) {
+                target = (target + 1) & mask;
+            }
+            putLong(table, target * SLOT_SIZE, keyRef);
+            putLong(table, target * SLOT_SIZE + 8, getLong(old, slot * SLOT_SIZE + 8));
+        }
+        for (ByteBuffer chunk: old) {
+            if (!chunk.isDirect()) {
+                heapBytes -= chunk.capacity();
+            }
+        }
+    }
+
+    private ByteBuffer[] allocateTable(long slots) {
+        long bytes = slots * SLOT_SIZE;
+        int chunkSize = (int) Math.min(bytes, CHUNK_SIZE);
+        ByteBuffer[] chunks = new ByteBuffer[(int) (bytes / chunkSize)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = allocate(chunkSize);
+        }
+        return chunks;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        if (heapBytes + bytes <= heapLimit) {
+            heapBytes += bytes;
+            return ByteBuffer.allocate(bytes);
+        }
+        try {
+            if (file == null) {
+                file = FileChannel.open(Files.createTempFile("atag-node-ids", ".map"), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            // mapping beyond the end extends the file, the new region reads as zeros
+            ByteBuffer buffer = file.map(FileChannel.MapMode.READ_WRITE, fileLength, bytes);
+            fileLength += bytes;
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long getLong(ByteBuffer[] chunks, long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    private static void putLong(ByteBuffer[] chunks, long position, long value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putLong((int) (position & CHUNK_MASK), value);
+    }
+}
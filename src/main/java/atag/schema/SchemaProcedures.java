@@ -0,0 +1,67 @@
+package atag.schema;
+
+import atag.util.NodeLookup;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.IndexType;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.*;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+public class SchemaProcedures {
+
+    @Context
+    public Transaction tx;
+
+    @Context
+    public Log log;
+
+    public static class IndexResult {
+        public final String label;
+        public final String propertyKey;
+        public final String status;
+
+        public IndexResult(String label, String propertyKey, String status) {
+            this.label = label;
+            this.propertyKey = propertyKey;
+            this.status = status;
+        }
+    }
+
+    @Procedure(mode = Mode.SCHEMA)
+    @Description("create the indexes needed for uuid lookups of chain procedures and JGF import")
+    public Stream<IndexResult> createIndexes(@Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        String propertyKey = config.getOrDefault("propertyKey", "uuid").toString();
+        boolean unique = (boolean) config.getOrDefault("unique", false);
+        Set<String> labels = new LinkedHashSet<>();
+        labels.add(config.getOrDefault("textLabel", "Text").toString());
+        labels.addAll(stringList(config.getOrDefault("elementLabels", List.of("Character", "Token"))));
+        labels.addAll(stringList(config.getOrDefault("labels", Collections.emptyList())));
+
+        List<IndexResult> results = new ArrayList<>();
+        for (String name: labels) {
+            Label label = Label.label(name);
+            if (NodeLookup.isIndexed(tx, label, propertyKey)) {
+                results.add(new IndexResult(name, propertyKey, "exists"));
+            } else if (unique) {
+                tx.schema().constraintFor(label).assertPropertyIsUnique(propertyKey).create();
+                results.add(new IndexResult(name, propertyKey, "created unique"));
+            } else {
+                tx.schema().indexFor(label).on(propertyKey).withIndexType(IndexType.RANGE).create();
+                results.add(new IndexResult(name, propertyKey, "created"));
+            }
+        }
+        log.info("createIndexes: {}", results.stream().map(r -> ":%s(%s) %s".formatted(r.label, r.propertyKey, r.status)).toList());
+        NodeLookup.resetChecks();
+        return results.stream();
+    }
+
+    private static List<String> stringList(Object value) {
+        if (value instanceof Collection<?> collection) {
+            return collection.stream().map(Object::toString).toList();
+        }
+        return List.of(value.toString());
+    }
+}
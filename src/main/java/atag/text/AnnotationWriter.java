@@ -0,0 +1,199 @@
+package atag.text;
+
+import org.neo4j.graphdb.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * creates annotation nodes while the plain text of a document is assembled in document order.
+ * An annotation is opened when its element starts and closed when it ends, at that point its offsets and
+ * plain text are known. Only the currently open annotations are kept on a stack.
+ * <p>
+ * Usually the text of an annotation is the part of the plain text between its offsets. If text which is not part of
+ * the plain text is reported by {@link #hiddenText(String)}, e.g. because an xpath expression selects only some
+ * text nodes, annotations cover their whole content while offsets only count plain text. Only then a separate
+ * content buffer is kept.
+ */
+class AnnotationWriter {
+
+    private record Open(Node node, int start, int contentStart) {
+    }
+
+    private final Transaction tx;
+    private final Node startNode;
+    private final Label label;
+    private final RelationshipType relationshipType;
+    private final String plainTextProperty;
+    private int plainTextMaxLength = -1;
+    private StandoffLinker standoffLinker;
+
+    private final StringBuilder plainText = new StringBuilder();
+    private StringBuilder content;
+    private final Deque<Open> open = new ArrayDeque<>();
+    private final List<Node> annotations = new ArrayList<>();
+    private boolean collectAnnotations = true;
+    private long count;
+
+    AnnotationWriter(Transaction tx, Node startNode, Label label, RelationshipType relationshipType, String plainTextProperty) {
+        this.tx = tx;
+        this.startNode = startNode;
+        this.label = label;
+        this.relationshipType = relationshipType;
+        this.plainTextProperty = plainTextProperty;
+    }
+
+    /**
+     * limit the plain text stored on each annotation, the start node always gets the full plain text
+     * @param plainTextMaxLength -1 to store the full text, 0 to store none, otherwise the length of the stored prefix
+     * @return this
+     */
+    AnnotationWriter withPlainTextMaxLength(int plainTextMaxLength) {
+        this.plainTextMaxLength = plainTextMaxLength;
+        return this;
+    }
+
+    /**
+     * build the character chain of the plain text and link the annotations to it when finished
+     * @param standoffLinker linker collecting the annotations, null for no character chain
+     * @return this
+     */
+    AnnotationWriter withStandoffLinker(StandoffLinker standoffLinker) {
+        this.standoffLinker = standoffLinker;
+        return this;
+    }
+
+    /**
+     * @param collectAnnotations false if {@link #finish()} does not need to return the annotations, e.g. only their
+     *                           number is of interest
+     * @return this
+     */
+    AnnotationWriter collectAnnotations(boolean collectAnnotations) {
+        this.collectAnnotations = collectAnnotations;
+        return this;
+    }
+
+    /**
+     * @return the text to be stored for an annotation, null if nothing should be stored
+     */
+    static String limit(CharSequence text, int start, int plainTextMaxLength) {
+        int end = plainTextMaxLength < 0 ? text.length() : Math.min(text.length(), start + plainTextMaxLength);
+        return plainTextMaxLength == 0 ? null : text.subSequence(start, end).toString();
+    }
+
+    /**
+     * parse the {@code plainTextMaxLength} configuration setting
+     */
+    static int plainTextMaxLength(Map<String, Object> config) {
+        Object value = config.getOrDefault("plainTextMaxLength", -1);
+        if (!(value instanceof Number number) || number.longValue() < -1 || number.longValue() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("plainTextMaxLength must be -1, 0 or a positive number, got " + value);
+        }
+        return number.intValue();
+    }
+
+    /**
+     * open a new annotation starting at the current offset
+     */
+    Node startElement(String tag, Map<String, Object> attributes) {
+        Node annotation = tx.createNode(label);
+        startNode.createRelationshipTo(annotation, relationshipType);
+        annotation.setProperty("tag", tag);
+        annotation.setProperty("startIndex", Integer.toUnsignedLong(plainText.length()));
+        attributes.forEach(annotation::setProperty);
+        open.push(new Open(annotation, plainText.length(), content().length()));
+        if (collectAnnotations) {
+            annotations.add(annotation);
+        }
+        count++;
+        return annotation;
+    }
+
+    void text(char[] characters, int start, int length) {
+        plainText.append(characters, start, length);
+        if (content != null) {
+            content.append(characters, start, length);
+        }
+    }
+
+    void text(String text) {
+        plainText.append(text);
+        if (content != null) {
+            content.append(text);
+        }
+    }
+
+    /**
+     * text belonging to the open annotations but not to the plain text
+     */
+    void hiddenText(String text) {
+        if (open.isEmpty()) {
+            return;
+        }
+        if (content == null) {
+            content = new StringBuilder(plainText);
+        }
+        content.append(text);
+    }
+
+    private StringBuilder content() {
+        return content == null ? plainText : content;
+    }
+
+    /**
+     * close the most recently opened annotation at the current offset
+     */
+    Node endElement() {
+        Open current = open.pop();
+        Node annotation = current.node();
+        StringBuilder content = content();
+        annotation.setProperty("endIndex", Integer.toUnsignedLong(current.start() + content.length() - current.contentStart()));
+        if (content.length() > current.contentStart()) {
+            String text = limit(content, current.contentStart(), plainTextMaxLength);
+            if (text != null) {
+                annotation.setProperty(plainTextProperty, text);
+            }
+        }
+        if (standoffLinker != null) {
+            standoffLinker.add(annotation, current.start(), plainText.length());
+        }
+        return annotation;
+    }
+
+    /**
+     * @return nesting level of the current position, 0 outside of any annotation
+     */
+    int depth() {
+        return open.size();
+    }
+
+    int length() {
+        return plainText.length();
+    }
+
+    /**
+     * @return number of annotations created so far
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * store the plain text of the whole document on the start node and build the character chain if requested
+     * @return annotations in the order they have been opened, empty if they are not collected
+     */
+    List<Node> finish() {
+        if (!open.isEmpty()) {
+            throw new IllegalStateException("%d annotations have not been closed".formatted(open.size()));
+        }
+        String text = plainText.toString();
+        startNode.setProperty(plainTextProperty, text);
+        if (standoffLinker != null) {
+            standoffLinker.link(tx, startNode, text);
+        }
+        return annotations;
+    }
+}
@@ -0,0 +1,115 @@
+package atag.text;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * loads local files given by {@code file://} URIs. Like {@code LOAD CSV} paths are resolved against the import
+ * directory of neo4j ({@code server.directories.import}) and files outside of it cannot be read.
+ * <p>
+ * Small files are read into a byte array, larger ones are memory-mapped and decoded directly from the mapping,
+ * so the file content is not copied to the heap before decoding.
+ */
+class FileLoader {
+
+    /**
+     * files of at least this size are memory-mapped
+     */
+    static final long MAP_THRESHOLD = 1 << 20;
+
+    /**
+     * @param charset charset of the files
+     * @param maxSize files larger than this many bytes are rejected
+     */
+    record Settings(Charset charset, long maxSize) {
+
+        static Settings of(Map<String, Object> config) {
+            Object charset = config.getOrDefault("charset", "UTF-8");
+            Object maxSize = config.getOrDefault("maxSize", 256L << 20);
+            // a mapping cannot exceed 2 GiB
+            if (!(maxSize instanceof Number number) || number.longValue() <= 0 || number.longValue() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("maxSize must be a positive number of bytes below 2 GiB, got " + maxSize);
+            }
+            try {
+                return new Settings(Charset.forName(charset.toString()), number.longValue());
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                throw new IllegalArgumentException("unsupported charset " + charset);
+            }
+        }
+    }
+
+    private final Path root;
+    private final Settings settings;
+
+    /**
+     * @param root import directory, files are resolved against it
+     */
+    FileLoader(Path root, Settings settings) {
+        this.root = root;
+        this.settings = settings;
+    }
+
+    /**
+     * @param uri file URI, its path is relative to the import directory
+     * @throws IllegalArgumentException if the file does not exist, is outside of the import directory or too large
+     */
+    String load(String uri) throws IOException {
+        Path file = resolve(uri);
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException(String.format("could not find resource %s", uri));
+        }
+        if (size > settings.maxSize()) {
+            throw new IllegalArgumentException("%s has %d bytes, more than maxSize %d".formatted(uri, size, settings.maxSize()));
+        }
+
+        String text;
+        if (size < MAP_THRESHOLD) {
+            text = new String(Files.readAllBytes(file), settings.charset());
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                text = settings.charset().decode(mapped).toString();
+            }
+        }
+        // a byte order mark is no content, parsers reading the string would reject it
+        return text.startsWith("\uFEFF") ? text.substring(1) : text;
+    }
+
+    /**
+     * @return the file named by the URI, symbolic links resolved
+     * @throws IllegalArgumentException if the file is not located inside the import directory
+     */
+    Path resolve(String uri) throws IOException {
+        // file://letters/1.xml and file:///letters/1.xml name the same file, a host is not meaningful here
+        String path = URI.create("file:/" + uri.substring(5).replaceFirst("^/+", "")).getPath();
+        Path realRoot = root.toRealPath();
+        Path file = realRoot.resolve(path.substring(1)).normalize();
+        if (Files.exists(file)) {
+            file = file.toRealPath();
+        }
+        if (!file.startsWith(realRoot)) {
+            throw new IllegalArgumentException("%s is outside of the import directory".formatted(uri));
+        }
+        if (Files.isDirectory(file)) {
+            throw new IllegalArgumentException("%s is a directory".formatted(uri));
+        }
+        return file;
+    }
+
+    static boolean isFileUri(String uri) {
+        return uri.regionMatches(true, 0, "file:", 0, 5);
+    }
+}
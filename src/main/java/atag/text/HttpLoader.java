@@ -0,0 +1,314 @@
+package atag.text;
+
+import atag.util.CacheStats;
+import atag.util.Hashes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * loads documents via HTTP. There is one client per redirect policy shared by all calls, so connections are kept alive
+ * and reused. The timeout is set per request.
+ * <p>
+ * Optionally responses are cached on disk together with their {@code ETag} and {@code Last-Modified} headers.
+ * A cached document is revalidated by a conditional request, if the server answers 304 Not Modified
+ * it is read from disk instead of being transferred again. The cache holds at most {@value #MAX_ENTRIES} documents
+ * with {@value #MAX_BYTES} bytes in total, the least recently used ones are deleted beyond that.
+ */
+class HttpLoader {
+
+    private static final Pattern CHARSET = Pattern.compile(";\\s*charset=\"?([^\";\\s]+)", Pattern.CASE_INSENSITIVE);
+
+    static final int MAX_ENTRIES = 1000;
+    static final long MAX_BYTES = 256L << 20;
+
+    // the redirect policy can only be set on the client
+    private static final HttpClient REDIRECTING_CLIENT = client(HttpClient.Redirect.NORMAL);
+    private static final HttpClient CLIENT = client(HttpClient.Redirect.NEVER);
+    private static final CacheStats stats = CacheStats.register("load.http", MAX_ENTRIES);
+    // guards eviction, which lists the whole directory
+    private static final Object evictionLock = new Object();
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    /**
+     * system property naming the cache directory
+     */
+    static final String CACHE_DIRECTORY_PROPERTY = "atag.httpCacheDirectory";
+
+    /**
+     * set by the administrator only, so callers cannot make the database write to arbitrary directories.
+     * The default directory below {@code java.io.tmpdir} includes the user name, as the temporary directory
+     * is usually shared with other users.
+     */
+    static final Path CACHE_DIRECTORY = Path.of(System.getProperty(CACHE_DIRECTORY_PROPERTY,
+            Path.of(System.getProperty("java.io.tmpdir"), "atag-http-cache-" + System.getProperty("user.name")).toString()));
+
+    /**
+     * @param timeout time to wait for the response, including establishing the connection
+     * @param cache whether responses are cached on disk
+     * @param followRedirects whether redirects are followed, except from https to http
+     */
+    record Settings(Duration timeout, boolean cache, boolean followRedirects) {
+
+        static Settings of(Map<String, Object> config) {
+            return new Settings(duration(config, "timeout", 60_000),
+                    Boolean.TRUE.equals(config.get("cache")), Boolean.TRUE.equals(config.get("followRedirects")));
+        }
+
+        private static Duration duration(Map<String, Object> config, String key, long defaultMillis) {
+            Object value = config.getOrDefault(key, defaultMillis);
+            if (!(value instanceof Number millis) || millis.longValue() <= 0) {
+                throw new IllegalArgumentException("%s must be a positive number of milliseconds, got %s".formatted(key, value));
+            }
+            return Duration.ofMillis(millis.longValue());
+        }
+    }
+
+    /**
+     * @param text contents of the document
+     * @param cached true if the document has been read from the cache after revalidation
+     */
+    record Loaded(String text, boolean cached) {
+    }
+
+    private final Settings settings;
+    private final Path cacheDirectory;
+
+    /**
+     * @param cacheDirectory directory holding cached responses, only used if caching is enabled
+     */
+    HttpLoader(Settings settings, Path cacheDirectory) {
+        this.settings = settings;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    private static HttpClient client(HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder().followRedirects(redirect).build();
+    }
+
+    private HttpClient client() {
+        return settings.followRedirects() ? REDIRECTING_CLIENT : CLIENT;
+    }
+
+    /**
+     * @param uri http or https URI
+     * @throws IllegalArgumentException if the resource does not exist
+     */
+    Loaded load(String uri) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .timeout(settings.timeout())
+                .GET();
+
+        Path body = null;
+        Path metadata = null;
+        Properties cached = null;
+        if (settings.cache()) {
+            checkCacheDirectory(cacheDirectory);
+            String key = Hashes.sha256(uri);
+            body = cacheDirectory.resolve(key + ".body");
+            metadata = cacheDirectory.resolve(key + ".properties");
+            cached = readMetadata(metadata, body);
+            if (cached != null) {
+                String etag = cached.getProperty("etag");
+                String lastModified = cached.getProperty("lastModified");
+                if (etag != null) {
+                    request.header("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    request.header("If-Modified-Since", lastModified);
+                }
+            }
+        }
+
+        HttpResponse<byte[]> response = client().send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        switch (response.statusCode()) {
+            case HttpURLConnection.HTTP_OK -> {
+                String contentType = response.headers().firstValue("Content-Type").orElse(null);
+                if (settings.cache()) {
+                    stats.miss();
+                    write(response, contentType, body, metadata);
+                }
+                return new Loaded(new String(response.body(), charset(contentType)), false);
+            }
+            case HttpURLConnection.HTTP_NOT_MODIFIED -> {
+                if (cached == null) {
+                    throw new RuntimeException("Unexpected status code: " + response.statusCode());
+                }
+                stats.hit();
+                String text = Files.readString(body, charset(cached.getProperty("contentType")));
+                // the modification time orders entries for eviction
+                touch(body);
+                return new Loaded(text, true);
+            }
+            case HttpURLConnection.HTTP_NOT_FOUND ->
+                    throw new IllegalArgumentException(String.format("could not find resource %s", uri));
+            default -> throw new RuntimeException("Unexpected status code: " + response.statusCode());
+        }
+    }
+
+    /**
+     * @return the validators of a cached response, null if nothing usable is cached
+     */
+    private static Properties readMetadata(Path metadata, Path body) throws IOException {
+        if (!Files.exists(metadata) || !Files.exists(body)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(metadata)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile
+            return null;
+        }
+        return properties.containsKey("etag") || properties.containsKey("lastModified") ? properties : null;
+    }
+
+    /**
+     * store a response if the server sent a validator, the body before the metadata so a reader
+     * never finds metadata without its body. Files are replaced atomically, concurrent loads of the same
+     * URI just overwrite each other.
+     */
+    private void write(HttpResponse<byte[]> response, String contentType, Path body, Path metadata) throws IOException {
+        Properties properties = new Properties();
+        response.headers().firstValue("ETag").ifPresent(etag -> properties.setProperty("etag", etag));
+        response.headers().firstValue("Last-Modified").ifPresent(lastModified -> properties.setProperty("lastModified", lastModified));
+        if (properties.isEmpty()) {
+            return;
+        }
+        if (contentType != null) {
+            properties.setProperty("contentType", contentType);
+        }
+        properties.setProperty("uri", response.uri().toString());
+
+        Path bodyTemp = Files.createTempFile(cacheDirectory, "body", ".tmp");
+        Files.write(bodyTemp, response.body());
+        Files.move(bodyTemp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path metadataTemp = Files.createTempFile(cacheDirectory, "metadata", ".tmp");
+        try (OutputStream out = Files.newOutputStream(metadataTemp)) {
+            properties.store(out, null);
+        }
+        Files.move(metadataTemp, metadata, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict(cacheDirectory, MAX_ENTRIES, MAX_BYTES);
+    }
+
+    private static void touch(Path body) throws IOException {
+        try {
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile, the text has been read already
+        }
+    }
+
+    /**
+     * delete the least recently used documents until at most {@code maxEntries} with {@code maxBytes} in total are left
+     */
+    static void evict(Path directory, int maxEntries, long maxBytes) throws IOException {
+        synchronized (evictionLock) {
+            List<Path> bodies = new ArrayList<>();
+            Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+            long bytes = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.body")) {
+                for (Path body: stream) {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(body, BasicFileAttributes.class);
+                        attributes.put(body, attrs);
+                        bodies.add(body);
+                        bytes += attrs.size();
+                    } catch (NoSuchFileException e) {
+                        // replaced meanwhile
+                    }
+                }
+            }
+            if (bodies.size() <= maxEntries && bytes <= maxBytes) {
+                return;
+            }
+            bodies.sort(Comparator.comparing(body -> attributes.get(body).lastModifiedTime()));
+            int entries = bodies.size();
+            for (Path body: bodies) {
+                if (entries <= maxEntries && bytes <= maxBytes) {
+                    break;
+                }
+                String name = body.getFileName().toString();
+                // metadata first, a body without metadata is never read
+                Files.deleteIfExists(body.resolveSibling(name.substring(0, name.length() - ".body".length()) + ".properties"));
+                Files.deleteIfExists(body);
+                entries--;
+                bytes -= attributes.get(body).size();
+                stats.eviction();
+            }
+        }
+    }
+
+    /**
+     * create the cache directory accessible by its owner only, or make sure an existing one is.
+     * Otherwise other users could read cached documents or plant their own.
+     *
+     * @throws IOException if the directory belongs to another user or is accessible by others
+     */
+    static void checkCacheDirectory(Path directory) throws IOException {
+        boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(directory.toAbsolutePath().getParent());
+            try {
+                if (posix) {
+                    Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createDirectory(directory);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // created concurrently, checked below
+            }
+        }
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("HTTP cache %s is not a directory".formatted(directory));
+        }
+        if (posix) {
+            PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            String user = System.getProperty("user.name");
+            if (!attributes.owner().getName().equals(user)) {
+                throw new IOException("HTTP cache %s is owned by %s instead of %s".formatted(directory, attributes.owner().getName(), user));
+            }
+            if (!OWNER_ONLY.containsAll(attributes.permissions())) {
+                throw new IOException("HTTP cache %s must be accessible by its owner only, but has permissions %s"
+                        .formatted(directory, PosixFilePermissions.toString(attributes.permissions())));
+            }
+        }
+    }
+
+    /**
+     * @return charset named by a content type, UTF-8 if there is none or it is unknown
+     */
+    static Charset charset(String contentType) {
+        if (contentType != null) {
+            Matcher matcher = CHARSET.matcher(contentType);
+            try {
+                if (matcher.find() && Charset.isSupported(matcher.group(1))) {
+                    return Charset.forName(matcher.group(1));
+                }
+            } catch (IllegalCharsetNameException e) {
+                // fall back to the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
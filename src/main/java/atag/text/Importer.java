@@ -1,12 +1,17 @@
 package atag.text;
 
-import atag.util.ResultTypes;
+import atag.util.BatchTransactions;
+import atag.util.Parallel;
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.neo4j.graphdb.*;
+import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
@@ -16,14 +21,12 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.*;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class Importer {
@@ -31,135 +34,338 @@ public class Importer {
     @Context
     public Transaction tx;
 
+    @Context
+    public GraphDatabaseService db;
+
     @Context
     public Log log;
 
+    /**
+     * shape of the result of the single document imports, set by the {@code resultMode} config setting
+     */
+    private enum ResultMode {
+        NODES, COUNT, NONE;
+
+        static ResultMode of(Object value) {
+            if (value == null) {
+                return NODES;
+            }
+            try {
+                return valueOf(value.toString().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown resultMode '%s', must be one of nodes, count, none".formatted(value));
+            }
+        }
+
+        Stream<AnnotationResult> result(List<Node> annotations, long count) {
+            return switch (this) {
+                case NODES -> annotations.stream().map(AnnotationResult::ofNode);
+                case COUNT -> Stream.of(AnnotationResult.ofCount(count));
+                case NONE -> Stream.empty();
+            };
+        }
+    }
+
+    /**
+     * depending on the result mode either an annotation node or the number of annotations created
+     */
+    public static class AnnotationResult {
+        public final Node node;
+        public final Long count;
+
+        private AnnotationResult(Node node, Long count) {
+            this.node = node;
+            this.count = count;
+        }
+
+        static AnnotationResult ofNode(Node node) {
+            return new AnnotationResult(node, null);
+        }
+
+        static AnnotationResult ofCount(long count) {
+            return new AnnotationResult(null, count);
+        }
+    }
+
     @Procedure(mode = Mode.WRITE, name = "atag.text.import.html")
-    public Stream<ResultTypes.NodeResult> importHtml(
+    public Stream<AnnotationResult> importHtml(
             @Name("startNode") Node startNode,
             @Name("propertyKey") String propertyKey,
             @Name(value = "label for annotation nodes", defaultValue = "Annotation") String label,
             @Name(value = "property name for plain text", defaultValue = "plainText") String plainTextProperty,
-            @Name(value = "relationship type", defaultValue = "HAS_ANNOTATION") String relationshipTypeString ) {
+            @Name(value = "relationship type", defaultValue = "HAS_ANNOTATION") String relationshipTypeString,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
 
+        ResultMode resultMode = ResultMode.of(config.get("resultMode"));
+        int plainTextMaxLength = AnnotationWriter.plainTextMaxLength(config);
         String htmlText = (String) startNode.getProperty(propertyKey);
 
+        List<Node> annotations = resultMode == ResultMode.NODES ? new ArrayList<>() : null;
+        long count = writeHtml(tx, startNode, parseHtml(htmlText), Label.label(label), RelationshipType.withName(relationshipTypeString),
+                plainTextProperty, plainTextMaxLength, StandoffLinker.of(config), annotations);
+        log.info("Result: {} annotations", count);
+        return resultMode.result(annotations, count);
+    }
+
+    private static Document parseHtml(String htmlText) {
         Document document = Jsoup.parse(htmlText);
         document.outputSettings().prettyPrint(false); // This line prevents Jsoup from adding line breaks
+        return document;
+    }
 
-        StringBuilder plainTextBuilder = new StringBuilder();
-        RelationshipType relationshipType = RelationshipType.withName(relationshipTypeString);
-        long result = traverse(0, document.body(), 0l, plainTextBuilder, startNode, Label.label(label),
-                relationshipType, plainTextProperty);
-        startNode.setProperty(plainTextProperty, plainTextBuilder.toString());
-        log.info("Result: plain {}, length {}", plainTextBuilder, result);
-
-        return startNode.getRelationships(Direction.OUTGOING, relationshipType).stream()
-                .map(Relationship::getEndNode)
-                .sorted(Comparator.comparing(node -> (long) node.getProperty("startIndex", 0L)))
-                .map(ResultTypes.NodeResult::new);
-    }
-
-    private long traverse(int depth, org.jsoup.nodes.Node node, long index, StringBuilder plainTextBuilder,
-                          Node neo4jNode, Label label, RelationshipType relationshipType, String plainTextProperty) {
-        if (node instanceof org.jsoup.nodes.Element element) {
-            Node newNeo4jNode = null;
-            if (depth>0){
-                newNeo4jNode = tx.createNode(label);
-                neo4jNode.createRelationshipTo(newNeo4jNode, relationshipType);
-                newNeo4jNode.setProperty("startIndex", index);
-                newNeo4jNode.setProperty("tag", element.nodeName());
-            }
+    private record OpenElement(Node annotation, int start) {
+    }
+
+    /**
+     * visit the body in document order without recursion, each element below the body becomes an annotation.
+     * The plain text is collected in one buffer, the text of an annotation is the part between its offsets.
+     * @param annotations receives the annotations in the order of their start offsets, may be null
+     * @return number of annotations created
+     */
+    private long writeHtml(Transaction tx, Node startNode, Document document, Label label, RelationshipType relationshipType,
+                           String plainTextProperty, int plainTextMaxLength, StandoffLinker standoffLinker, List<Node> annotations) {
+        boolean debug = log.isDebugEnabled();
+        org.jsoup.nodes.Element body = document.body();
+        StringBuilder plainText = new StringBuilder();
+        Deque<OpenElement> open = new ArrayDeque<>();
+        long[] count = new long[1];
 
-            log.debug(" ".repeat(depth) + "Depth: {}, Element: {}, index: {}", depth, element.nodeName(), index);
-            StringBuilder localPlainTextBuilder = new StringBuilder();
-            for (org.jsoup.nodes.Node child : element.childNodes()) {
-                index = traverse(depth+1, child, index, localPlainTextBuilder, neo4jNode, label,
-                        relationshipType, plainTextProperty);
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(org.jsoup.nodes.Node node, int depth) {
+                if (node instanceof org.jsoup.nodes.Element element) {
+                    if (debug) {
+                        log.debug("{} Depth: {}, Element: {}, index: {}", " ".repeat(depth), depth, element.nodeName(), plainText.length());
+                    }
+                    if (depth > 0) {
+                        Node annotation = tx.createNode(label);
+                        startNode.createRelationshipTo(annotation, relationshipType);
+                        annotation.setProperty("startIndex", (long) plainText.length());
+                        annotation.setProperty("tag", element.nodeName());
+                        open.push(new OpenElement(annotation, plainText.length()));
+                        if (annotations != null) {
+                            annotations.add(annotation);
+                        }
+                        count[0]++;
+                    }
+                } else if (node instanceof org.jsoup.nodes.TextNode textNode) {
+                    plainText.append(textNode.text());
+                    if (debug) {
+                        log.debug("{} Text: {}, index: {}", " ".repeat(depth), textNode.text(), plainText.length());
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown node type: " + node);
+                }
             }
 
-            if (depth>0){
-                newNeo4jNode.setProperty("endIndex", index);
-                newNeo4jNode.setProperty(plainTextProperty, localPlainTextBuilder.toString());
+            @Override
+            public void tail(org.jsoup.nodes.Node node, int depth) {
+                if (node instanceof org.jsoup.nodes.Element && depth > 0) {
+                    OpenElement element = open.pop();
+                    element.annotation().setProperty("endIndex", (long) plainText.length());
+                    String text = AnnotationWriter.limit(plainText, element.start(), plainTextMaxLength);
+                    if (text != null) {
+                        element.annotation().setProperty(plainTextProperty, text);
+                    }
+                    if (standoffLinker != null) {
+                        standoffLinker.add(element.annotation(), element.start(), plainText.length());
+                    }
+                }
             }
-            plainTextBuilder.append(localPlainTextBuilder);
+        }, body);
 
-        } else if (node instanceof org.jsoup.nodes.TextNode textNode) {
-            plainTextBuilder.append(textNode.text());
-            index += textNode.text().length();
-            log.debug(" ".repeat(depth) + "Text: {}, index: {}", textNode.text(), index);
-        } else {
-            throw new IllegalArgumentException("Unknown node type: " + node);
+        String text = plainText.toString();
+        startNode.setProperty(plainTextProperty, text);
+        if (debug) {
+            log.debug("Result: plain {}", text);
+        }
+        if (standoffLinker != null) {
+            standoffLinker.link(tx, startNode, text);
         }
-        return index;
+        return count[0];
     }
+
     @Procedure(mode = Mode.WRITE, name = "atag.text.import.xml")
-    public Stream<ResultTypes.NodeResult> importXml(
+    public Stream<AnnotationResult> importXml(
             @Name("startNode") Node startNode,
             @Name("propertyKey") String propertyKey,
             @Name(value = "xpath expression", defaultValue = "/TEI/text/body//node()") String path,
             @Name(value = "label for annotation nodes", defaultValue = "Annotation") String labelString,
             @Name(value = "property name for plain text", defaultValue = "plainText") String plainTextProperty,
-            @Name(value = "relationship type", defaultValue = "HAS_ANNOTATION") String relationshipTypeString ) {
-        try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilderFactory.setNamespaceAware(true);
-            documentBuilderFactory.setIgnoringElementContentWhitespace(true);
-            documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            documentBuilder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
+            @Name(value = "relationship type", defaultValue = "HAS_ANNOTATION") String relationshipTypeString,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        ResultMode resultMode = ResultMode.of(config.get("resultMode"));
+        AnnotationWriter writer = new AnnotationWriter(tx, startNode, Label.label(labelString),
+                RelationshipType.withName(relationshipTypeString), plainTextProperty)
+                .withPlainTextMaxLength(AnnotationWriter.plainTextMaxLength(config))
+                .withStandoffLinker(StandoffLinker.of(config))
+                .collectAnnotations(resultMode == ResultMode.NODES);
+        if ((boolean) config.getOrDefault("streaming", false)) {
+            importXmlStreaming(startNode, propertyKey, path, writer);
+        } else {
+            ParsedXml parsed = parseXml((String) startNode.getProperty(propertyKey), path);
+            traverse(parsed.document(), parsed.selected(), writer);
+        }
+        return resultMode.result(writer.finish(), writer.count());
+    }
 
-            String xml = (String) startNode.getProperty(propertyKey);
-            org.w3c.dom.Document doc = documentBuilder.parse(new ByteArrayInputStream(xml.getBytes()));
-            XPathFactory xPathFactory = XPathFactory.newInstance();
+    /**
+     * a parsed document and the nodes selected by the xpath expression
+     */
+    private record ParsedXml(org.w3c.dom.Document document, Set<org.w3c.dom.Node> selected) {
+    }
 
-            XPath xPath = xPathFactory.newXPath();
+    private static ParsedXml parseXml(String xml, String path) {
+        try {
+            org.w3c.dom.Document doc = XmlParsers.documentBuilder().parse(new InputSource(new StringReader(xml)));
 
             path = StringUtils.isEmpty(path) ? "/" : path;
-            XPathExpression xPathExpression = xPath.compile(path);
+            XPathExpression xPathExpression = XmlParsers.xPath(path);
             NodeList nodeList = (NodeList) xPathExpression.evaluate(doc, XPathConstants.NODESET);
 
-            RelationshipType relationshipType = RelationshipType.withName(relationshipTypeString);
-            Label label = Label.label(labelString);
-            StringBuilder plainTextBuilder = new StringBuilder();
-
-            List<Node> annotations = new ArrayList<>();
-
+            Set<org.w3c.dom.Node> selected = Collections.newSetFromMap(new IdentityHashMap<>());
             for (int i=0; i<nodeList.getLength(); i++) {
                 org.w3c.dom.Node item = nodeList.item(i);
-//                int depth = getDepth(item);
-
-                if (item instanceof Element element) {
-                    Node newNeo4jNode = tx.createNode(label);
-                    annotations.add(newNeo4jNode);
-                    String textContent = element.getTextContent();
-                    startNode.createRelationshipTo(newNeo4jNode, relationshipType);
-                    newNeo4jNode.setProperty("tag", element.getNodeName());
-                    newNeo4jNode.setProperty("startIndex", Integer.toUnsignedLong(plainTextBuilder.length()));
-                    newNeo4jNode.setProperty("endIndex", Integer.toUnsignedLong(plainTextBuilder.length()+textContent.length()));
-                    Map<String, Object> attributes = getAttributes(element);
-                    attributes.forEach(newNeo4jNode::setProperty);
-                    if (!textContent.isEmpty()) {
-                        newNeo4jNode.setProperty(plainTextProperty, textContent);
-                    }
-                    if (log.isDebugEnabled()) {
-                        log.debug("{} Element: {}, attributes: {}, startIndex: {}, stopIndex: {}",
-                                ".".repeat(getDepth(item)), element.getNodeName(), attributes,
-                                plainTextBuilder.length(), plainTextBuilder.length()+textContent.length());
-                    }
-                } else if (item instanceof org.w3c.dom.Text text) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("{} Text: {}", ".".repeat(getDepth(item)), text.getTextContent());
-                    }
-                    plainTextBuilder.append(text.getTextContent());
-                } else {
+                if (!(item instanceof Element || item instanceof org.w3c.dom.Text)) {
                     throw new IllegalArgumentException("Unknown node type: " + item);
                 }
+                selected.add(item);
             }
-            String plainText = plainTextBuilder.toString();
-            startNode.setProperty(plainTextProperty, plainText);
-            return annotations.stream().map(ResultTypes.NodeResult::new);
-        } catch (ParserConfigurationException | XPathExpressionException | SAXException | IOException e) {
+            return new ParsedXml(doc, selected);
+        } catch (XPathExpressionException | SAXException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Procedure(mode = Mode.WRITE, name = "atag.text.import.htmlAll")
+    @Description("import the html text of many nodes, parsing on several threads and writing in batches")
+    public Stream<ImportResult> importHtmlAll(
+            @Name("list of start nodes or label of start nodes") Object nodes,
+            @Name("propertyKey") String propertyKey,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        BulkSettings settings = BulkSettings.of(config);
+        return importAll("htmlAll", nodes, propertyKey, settings, Importer::parseHtml,
+                (innerTx, startNode, document) -> writeHtml(innerTx, startNode, document, settings.label(),
+                        settings.relationshipType(), settings.plainTextProperty(), settings.plainTextMaxLength(),
+                        StandoffLinker.of(config), null));
+    }
+
+    @Procedure(mode = Mode.WRITE, name = "atag.text.import.xmlAll")
+    @Description("import the xml text of many nodes, parsing on several threads and writing in batches")
+    public Stream<ImportResult> importXmlAll(
+            @Name("list of start nodes or label of start nodes") Object nodes,
+            @Name("propertyKey") String propertyKey,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        BulkSettings settings = BulkSettings.of(config);
+        if ((boolean) config.getOrDefault("streaming", false)) {
+            throw new IllegalArgumentException("streaming is not supported by xmlAll, the document is written while it is parsed");
+        }
+        String path = config.getOrDefault("path", "/TEI/text/body//node()").toString();
+        return importAll("xmlAll", nodes, propertyKey, settings, xml -> parseXml(xml, path),
+                (innerTx, startNode, parsed) -> {
+                    AnnotationWriter writer = new AnnotationWriter(innerTx, startNode, settings.label(),
+                            settings.relationshipType(), settings.plainTextProperty())
+                            .withPlainTextMaxLength(settings.plainTextMaxLength())
+                            .withStandoffLinker(StandoffLinker.of(config))
+                            .collectAnnotations(false);
+                    traverse(parsed.document(), parsed.selected(), writer);
+                    writer.finish();
+                    return writer.count();
+                });
+    }
+
+    public static class ImportResult {
+        public final Node node;
+        public final long annotations;
+        public final String error;
+
+        public ImportResult(Node node, long annotations, String error) {
+            this.node = node;
+            this.annotations = annotations;
+            this.error = error;
+        }
+    }
+
+    /**
+     * settings of the bulk imports, the positional parameters of the single node imports are configuration settings here
+     */
+    private record BulkSettings(Label label, String plainTextProperty, RelationshipType relationshipType,
+                                int plainTextMaxLength, int parallelism, long batchSize) {
+
+        static BulkSettings of(Map<String, Object> config) {
+            return new BulkSettings(
+                    Label.label(config.getOrDefault("label", "Annotation").toString()),
+                    config.getOrDefault("plainTextProperty", "plainText").toString(),
+                    RelationshipType.withName(config.getOrDefault("relationshipType", "HAS_ANNOTATION").toString()),
+                    AnnotationWriter.plainTextMaxLength(config),
+                    Parallel.parallelism(config),
+                    BatchTransactions.batchSize(config, 100));
+        }
+    }
+
+    private interface DocumentWriter<T> {
+        /**
+         * @return number of annotations created
+         */
+        long write(Transaction tx, Node startNode, T document);
+    }
+
+    private record Source(String elementId, String text) {
+    }
+
+    private record Parsed<T>(String elementId, T document, String error) {
+    }
+
+    private record Imported(String elementId, long annotations, String error) {
+    }
+
+    /**
+     * documents are parsed on worker threads, which needs no transaction. The annotations are written on the calling
+     * thread in transactions of {@code batchSize} documents, so writes do not conflict with each other.
+     * A document which cannot be parsed is reported in the error column, a failure while writing aborts the procedure,
+     * batches committed before are kept.
+     */
+    private <T> Stream<ImportResult> importAll(String name, Object nodes, String propertyKey, BulkSettings settings,
+                                               Function<String, T> parser, DocumentWriter<T> documentWriter) {
+        List<Imported> imported = new ArrayList<>();
+        try (ResourceIterator<String> elementIds = Parallel.elementIds(tx, nodes);
+             BatchTransactions batches = new BatchTransactions(db, settings.batchSize(), log, name)) {
+            Iterator<Source> sources = Iterators.map(elementId -> new Source(elementId,
+                    tx.getNodeByElementId(elementId).getProperty(propertyKey, null) instanceof String text ? text : null), elementIds);
+            Parallel.forEachOrdered(sources, settings.parallelism(), source -> parse(name, source, propertyKey, parser),
+                    parsed -> {
+                        if (parsed.error() != null) {
+                            imported.add(new Imported(parsed.elementId(), 0, parsed.error()));
+                            return;
+                        }
+                        Transaction innerTx = batches.tx();
+                        Node startNode = innerTx.getNodeByElementId(parsed.elementId());
+                        imported.add(new Imported(parsed.elementId(), documentWriter.write(innerTx, startNode, parsed.document()), null));
+                        batches.done();
+                    });
+            batches.commit();
+        }
+        return imported.stream().map(result ->
+                new ImportResult(tx.getNodeByElementId(result.elementId()), result.annotations(), result.error()));
+    }
+
+    private <T> Parsed<T> parse(String name, Source source, String propertyKey, Function<String, T> parser) {
+        if (source.text() == null) {
+            return new Parsed<>(source.elementId(), null, "node has no string property %s".formatted(propertyKey));
+        }
+        try {
+            return new Parsed<>(source.elementId(), parser.apply(source.text()), null);
+        } catch (RuntimeException e) {
+            log.warn("{}: failed to parse node {}: {}", name, source.elementId(), e.getMessage());
+            return new Parsed<>(source.elementId(), null, e.getMessage());
+        }
+    }
+
+    private void importXmlStreaming(Node startNode, String propertyKey, String path, AnnotationWriter writer) {
+        StreamingXmlImporter importer = new StreamingXmlImporter(path, log);
+        try {
+            importer.parse(new StringReader((String) startNode.getProperty(propertyKey)), writer);
+        } catch (XMLStreamException e) {
             throw new RuntimeException(e);
         }
     }
@@ -174,12 +380,56 @@ public class Importer {
         return result;
     }
 
-    private int getDepth(org.w3c.dom.Node item) {
-        return getDepth(item, 0);
-    }
+    /**
+     * visit the document in document order without recursion, selected elements become annotations,
+     * selected text becomes plain text. Other text inside selected elements is part of their content only.
+     */
+    private void traverse(org.w3c.dom.Document doc, Set<org.w3c.dom.Node> selected, AnnotationWriter writer) {
+        boolean debug = log.isDebugEnabled();
+        int depth = 0;
+        org.w3c.dom.Node node = doc.getFirstChild();
+        while (node != null) {
+            // enter node
+            if (node instanceof Element element) {
+                if (selected.contains(element)) {
+                    Map<String, Object> attributes = getAttributes(element);
+                    writer.startElement(element.getNodeName(), attributes);
+                    if (debug) {
+                        log.debug("{} Element: {}, attributes: {}, startIndex: {}",
+                                ".".repeat(depth), element.getNodeName(), attributes, writer.length());
+                    }
+                }
+            } else if (node instanceof org.w3c.dom.Text text) {
+                if (selected.contains(text)) {
+                    if (debug) {
+                        log.debug("{} Text: {}", ".".repeat(depth), text.getData());
+                    }
+                    writer.text(text.getData());
+                } else {
+                    writer.hiddenText(text.getData());
+                }
+            }
 
-    private int getDepth(org.w3c.dom.Node item, int depth) {
-        org.w3c.dom.Node parent = item.getParentNode();
-        return parent==null ? depth : getDepth(parent, depth+1);
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+                depth++;
+                continue;
+            }
+            // leave nodes until one with a next sibling is found
+            while (node != null) {
+                if (node instanceof Element && selected.contains(node)) {
+                    writer.endElement();
+                }
+                if (node.getNextSibling() != null) {
+                    node = node.getNextSibling();
+                    break;
+                }
+                node = node.getParentNode();
+                depth--;
+                if (node == doc) {
+                    node = null;
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
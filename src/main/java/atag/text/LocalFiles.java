@@ -0,0 +1,48 @@
+package atag.text;
+
+import org.neo4j.configuration.Config;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.UserFunction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * reads files from the server. Kept apart from {@link Utils}, as the injected database API makes these functions
+ * unrestricted: they only run if listed in {@code dbms.security.procedures.unrestricted}, while the functions
+ * of {@link Utils} stay sandboxed.
+ */
+public class LocalFiles {
+
+    @Context
+    public GraphDatabaseAPI api;
+
+    /**
+     * load a file from the import directory
+     * @param uri {@code file://} URI relative to the import directory
+     * @param config charset and size limit, see {@link FileLoader.Settings}
+     */
+    @UserFunction(name = "atag.text.loadFile")
+    @Description("load the contents of a file in the import directory, must be allowed by dbms.security.procedures.unrestricted")
+    public String loadFile(@Name("uri") String uri, @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        if (!FileLoader.isFileUri(uri)) {
+            throw new IllegalArgumentException("URI must start with 'file://'");
+        }
+        Config neo4jConfig = api.getDependencyResolver().resolveDependency(Config.class);
+        if (!neo4jConfig.get(GraphDatabaseSettings.allow_file_urls)) {
+            throw new IllegalArgumentException("file URIs are disabled by " + GraphDatabaseSettings.allow_file_urls.name());
+        }
+        Path root = neo4jConfig.get(GraphDatabaseSettings.load_csv_file_url_root);
+        try {
+            return new FileLoader(root, FileLoader.Settings.of(config)).load(uri);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
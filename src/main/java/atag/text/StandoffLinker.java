@@ -0,0 +1,111 @@
+package atag.text;
+
+import atag.chains.ChainWriter;
+import atag.chains.ChainsProcedure;
+import atag.chains.Tokenizer;
+import atag.chains.Tokenizers;
+import org.neo4j.graphdb.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * builds the character chain of an imported text and links each annotation to its first and last character.
+ * Annotations are collected with their offsets while the document is traversed. Once the plain text is complete,
+ * the offsets are sorted and the annotations are linked while the characters are written in offset order,
+ * so neither a lookup nor a reference to every character is needed.
+ */
+class StandoffLinker {
+
+    static final RelationshipType REL_STANDOFF_START = RelationshipType.withName("STANDOFF_START");
+    static final RelationshipType REL_STANDOFF_END = RelationshipType.withName("STANDOFF_END");
+
+    private final boolean applyIndexProperties;
+    private final int indexStride;
+    private final List<Node> annotations = new ArrayList<>();
+    private int[] offsets = new int[64];
+
+    StandoffLinker(boolean applyIndexProperties, int indexStride) {
+        this.applyIndexProperties = applyIndexProperties;
+        this.indexStride = indexStride;
+    }
+
+    /**
+     * @return a new linker if the configuration enables {@code characterChain}, null otherwise
+     */
+    static StandoffLinker of(Map<String, Object> config) {
+        if (!Boolean.TRUE.equals(config.get("characterChain"))) {
+            return null;
+        }
+        return new StandoffLinker(!Boolean.FALSE.equals(config.get("applyIndexProperties")), ChainsProcedure.indexStride(config));
+    }
+
+    /**
+     * @param start offset of the first character in the plain text
+     * @param end offset behind the last character, annotations without text are not linked
+     */
+    void add(Node annotation, int start, int end) {
+        int i = 2 * annotations.size();
+        if (i + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        }
+        offsets[i] = start;
+        offsets[i + 1] = end;
+        annotations.add(annotation);
+    }
+
+    /**
+     * write the character chain of the plain text, attach it to the start node and link the annotations
+     * @return number of character nodes created
+     */
+    long link(Transaction tx, Node startNode, String plainText) {
+        if (startNode.hasRelationship(Direction.OUTGOING, ChainsProcedure.REL_NEXT_CHARACTER)) {
+            throw new IllegalArgumentException("start node already has a character chain");
+        }
+        ChainWriter writer = new ChainWriter(tx, Label.label("Character"), ChainsProcedure.REL_NEXT_CHARACTER, applyIndexProperties)
+                .withIndex(indexStride);
+        long[] starts = new long[annotations.size()];
+        long[] ends = new long[annotations.size()];
+        int linked = 0;
+        for (int i = 0; i < annotations.size(); i++) {
+            int start = offsets[2 * i];
+            int end = Math.min(offsets[2 * i + 1], plainText.length());
+            if (start < end) {
+                starts[linked] = sortKey(start, i);
+                ends[linked] = sortKey(end - 1, i);
+                linked++;
+            }
+        }
+        Arrays.sort(starts, 0, linked);
+        Arrays.sort(ends, 0, linked);
+
+        int nextStart = 0;
+        int nextEnd = 0;
+        Tokenizer.Cursor cursor = Tokenizers.characters().tokenize(plainText);
+        while (cursor.next()) {
+            if (cursor.start() < cursor.end()) {
+                Node character = writer.append(plainText.substring(cursor.start(), cursor.end()));
+                for (; nextStart < linked && starts[nextStart] >>> 32 < cursor.end(); nextStart++) {
+                    annotations.get((int) starts[nextStart]).createRelationshipTo(character, REL_STANDOFF_START);
+                }
+                for (; nextEnd < linked && ends[nextEnd] >>> 32 < cursor.end(); nextEnd++) {
+                    annotations.get((int) ends[nextEnd]).createRelationshipTo(character, REL_STANDOFF_END);
+                }
+            }
+        }
+        if (writer.first() != null) {
+            startNode.createRelationshipTo(writer.first(), ChainsProcedure.REL_NEXT_CHARACTER);
+        }
+        writer.writeIndex(startNode);
+        return writer.count();
+    }
+
+    /**
+     * @return offset and annotation packed into a long, sorting by offset
+     */
+    private static long sortKey(int offset, int annotation) {
+        return (long) offset << 32 | annotation;
+    }
+}
@@ -0,0 +1,126 @@
+package atag.text;
+
+import org.neo4j.logging.Log;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * imports XML with a StAX parser instead of building a DOM, so memory does not grow with the size of the document.
+ * Only paths like {@code /TEI/text/body//node()} or {@code //node()} are supported, i.e. all descendants of elements
+ * reached by a sequence of child steps without namespace prefix. Annotations are opened and closed while the document is read,
+ * apart from the plain text only the stack of open elements is kept.
+ */
+class StreamingXmlImporter {
+
+    private static final Pattern PATH = Pattern.compile("((?:/[^/\\s\\[\\]()@*:]+)*)//node\\(\\)");
+
+    private static final XMLInputFactory factory = XMLInputFactory.newFactory();
+
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private final List<String> steps;
+    private final Log log;
+
+    /**
+     * @throws IllegalArgumentException if the path is not supported in streaming mode
+     */
+    StreamingXmlImporter(String path, Log log) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("streaming import requires a path like /TEI/text/body//node() or //node()");
+        }
+        Matcher matcher = PATH.matcher(path);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("streaming import supports paths like /TEI/text/body//node() only, got " + path);
+        }
+        String prefix = matcher.group(1);
+        this.steps = prefix.isEmpty() ? List.of() : Arrays.asList(prefix.substring(1).split("/"));
+        this.log = log;
+    }
+
+    void parse(Reader source, AnnotationWriter writer) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(source);
+        try {
+            int depth = 0;           // number of open elements
+            int matched = 0;         // number of leading steps matched by the open elements
+            boolean selecting = steps.isEmpty();
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        if (selecting) {
+                            Map<String, Object> attributes = getAttributes(reader);
+                            writer.startElement(qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes);
+                            if (log.isDebugEnabled()) {
+                                log.debug("{} Element: {}, attributes: {}, startIndex: {}",
+                                        ".".repeat(depth), reader.getLocalName(), attributes, writer.length());
+                            }
+                        } else if (matched == depth && matchesStep(reader, depth)) {
+                            matched++;
+                            selecting = matched == steps.size();
+                        }
+                        depth++;
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        depth--;
+                        if (selecting && depth >= steps.size()) {
+                            writer.endElement();
+                        } else {
+                            selecting = steps.isEmpty();
+                            matched = Math.min(matched, depth);
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (selecting && depth > 0) {
+                            writer.text(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                    }
+                    default -> {
+                        // comments, processing instructions and the document itself carry no text
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean matchesStep(XMLStreamReader reader, int depth) {
+        String namespace = reader.getNamespaceURI();
+        return depth < steps.size() && (namespace == null || namespace.isEmpty())
+                && steps.get(depth).equals(reader.getLocalName());
+    }
+
+    /**
+     * attributes including namespace declarations, named like in the DOM
+     */
+    private static Map<String, Object> getAttributes(XMLStreamReader reader) {
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            result.put(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            result.put(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return result;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+}
@@ -2,101 +2,303 @@ package atag.text;
 
 import net.sf.saxon.lib.StandardErrorListener;
 import net.sf.saxon.s9api.*;
-import org.neo4j.procedure.Context;
-import org.neo4j.procedure.Name;
-import org.neo4j.procedure.UserFunction;
+import atag.util.BatchTransactions;
+import atag.util.Parallel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterators;
+import org.neo4j.procedure.*;
 
 import javax.xml.transform.stream.StreamSource;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
 public class Utils {
 
-    private static Processor processor = new Processor(false);
-    private static XsltCompiler compiler = processor.newXsltCompiler();
-    private static Map<String, XsltExecutable> xsltCache = new HashMap<>();
+    private static final Processor processor = new Processor(false);
 
     @Context
     public org.neo4j.logging.Log log;
 
+    @Context
+    public Transaction tx;
+
+    @Context
+    public GraphDatabaseService db;
+
     /**
      * load the contents of an URI
      * @param uri
+     * @param config timeouts, redirects and caching, see {@link HttpLoader.Settings}
      * @return the contents of the given URI
      */
     @UserFunction
-    public String load(@Name("uri") String uri) {
+    public String load(@Name("uri") String uri, @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
         try {
-            if (uri.startsWith("file://")) {
-                uri = uri.substring(7); // remove "file://" prefix
-            } else if (!uri.startsWith("http://") && !uri.startsWith("https://")) {
-                throw new IllegalArgumentException("URI must start with 'http://' or 'https://'");
-            }
-
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(uri))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            return switch (response.statusCode()) {
-                case HttpURLConnection.HTTP_OK -> response.body();
-                case HttpURLConnection.HTTP_NOT_FOUND ->
-                        throw new IllegalArgumentException(String.format("could not find resource %s", uri));
-                default -> throw new RuntimeException("Unexpected status code: " + response.statusCode());
-            };
+            return load(uri, config, httpLoader(config)).text();
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Procedure(name = "atag.text.loadAll")
+    @Description("load the contents of many URIs concurrently")
+    public Stream<LoadResult> loadAll(@Name("uris") List<String> uris,
+                                      @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        HttpLoader httpLoader = httpLoader(config);
+        // tasks mostly wait for the network, so by default more of them run than there are processors
+        int parallelism = Parallel.parallelism(config, 8);
+        List<LoadResult> results = new ArrayList<>(uris.size());
+        Parallel.forEachOrdered(uris.iterator(), parallelism, uri -> {
+            try {
+                HttpLoader.Loaded loaded = load(uri, config, httpLoader);
+                return new LoadResult(uri, loaded.text(), loaded.cached(), null);
+            } catch (IOException | RuntimeException e) {
+                log.warn("loadAll: failed to load {}: {}", uri, e.toString());
+                return new LoadResult(uri, null, false, e.getMessage() == null ? e.toString() : e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }, results::add);
+        return results.stream();
+    }
+
+    private HttpLoader.Loaded load(String uri, Map<String, Object> config, HttpLoader httpLoader) throws IOException, InterruptedException {
+        if (FileLoader.isFileUri(uri)) {
+            // reading server files must not be possible from a sandboxed function
+            throw new IllegalArgumentException("file URIs are read by atag.text.loadFile");
+        } else if (!uri.startsWith("http://") && !uri.startsWith("https://")) {
+            throw new IllegalArgumentException("URI must start with 'http://' or 'https://'");
+        }
+        return httpLoader.load(uri);
+    }
+
+    private static HttpLoader httpLoader(Map<String, Object> config) {
+        return new HttpLoader(HttpLoader.Settings.of(config), HttpLoader.CACHE_DIRECTORY);
+    }
+
+    public static class LoadResult {
+        public final String uri;
+        public final String text;
+        public final boolean cached;
+        public final String error;
+
+        public LoadResult(String uri, String text, boolean cached, String error) {
+            this.uri = uri;
+            this.text = text;
+            this.cached = cached;
+            this.error = error;
+        }
+    }
+
+    /**
+     * resolve the text of an annotation from the plain text of its text node
+     * @return the part of the plain text between start (inclusive) and end (exclusive), null if there is no plain text
+     */
+    @UserFunction
+    public String slice(@Name("textNode") Node textNode, @Name("start") long start, @Name("end") long end,
+                        @Name(value = "plainTextProperty", defaultValue = "plainText") String plainTextProperty) {
+        Object plainText = textNode.getProperty(plainTextProperty, null);
+        if (plainText == null) {
+            return null;
+        }
+        String text = plainText.toString();
+        int from = (int) Math.max(0, Math.min(start, text.length()));
+        int to = (int) Math.max(from, Math.min(end, text.length()));
+        return text.substring(from, to);
+    }
+
     @UserFunction
-    public String xslt(@Name("xml") String xml, @Name("xslt") String xslt) {
+    public String xslt(@Name("xml") String xml, @Name("xslt") String xslt,
+                       @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        XsltSettings settings = XsltSettings.of(config);
         try {
-            XsltExecutable stylesheet = xsltCache.computeIfAbsent(xslt, s -> {
-                try {
-                    return compiler.compile(new StreamSource(new StringReader(xslt)));
-                } catch (SaxonApiException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            XdmNode source = processor.newDocumentBuilder().build(new StreamSource(new StringReader(xml)));
-
-            // Create a XsltTransformer
-            XsltTransformer transformer = stylesheet.load();
-
-            StandardErrorListener listener = new StandardErrorListener();
-            listener.setLogger(new Neo4jLoggerBridge(log));
-            transformer.setErrorListener(listener);
-
-            // Set the root node of the source document to be the initial context node
-            transformer.setInitialContextNode(source);
-
-            // Create a Serializer
-            Serializer out = processor.newSerializer();
-            out.setOutputProperty(Serializer.Property.METHOD, "xml");
-            out.setOutputProperty(Serializer.Property.INDENT, "yes");
-            StringWriter writer = new StringWriter();
-            out.setOutputWriter(writer);
-
-            // Transform the source XML to System.out.
-            transformer.setDestination(out);
-            transformer.transform();
-
-            // Print the transformed result
-            return writer.toString();
+            XsltExecutable stylesheet = XsltCache.get(processor, xslt);
+            return transform(load(stylesheet, settings), xml, settings);
         } catch (SaxonApiException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * output and parameters of a transformation, see {@link #xslt(String, String, Map)}
+     */
+    record XsltSettings(String method, boolean indent, Map<QName, XdmValue> parameters) {
+
+        private static final Set<String> METHODS = Set.of("xml", "html", "xhtml", "text", "json", "adaptive");
+
+        @SuppressWarnings("unchecked")
+        static XsltSettings of(Map<String, Object> config) {
+            String method = config.getOrDefault("method", "xml").toString();
+            if (!METHODS.contains(method)) {
+                throw new IllegalArgumentException("unknown output method '%s', must be one of %s".formatted(method, new TreeSet<>(METHODS)));
+            }
+            boolean indent = !Boolean.FALSE.equals(config.get("indent"));
+            Object value = config.getOrDefault("parameters", Map.of());
+            if (!(value instanceof Map<?, ?> map)) {
+                throw new IllegalArgumentException("parameters must be a map");
+            }
+            Map<QName, XdmValue> parameters = new HashMap<>();
+            ((Map<String, Object>) map).forEach((name, parameter) -> parameters.put(QName.fromClarkName(name), XdmValue.makeValue(parameter)));
+            return new XsltSettings(method, indent, parameters);
+        }
+    }
+
+    /**
+     * @return a new transformer of the stylesheet logging to the neo4j log, with the stylesheet parameters of the settings set
+     */
+    private Xslt30Transformer load(XsltExecutable stylesheet, XsltSettings settings) throws SaxonApiException {
+        Xslt30Transformer transformer = stylesheet.load30();
+        StandardErrorListener listener = new StandardErrorListener();
+        listener.setLogger(new Neo4jLoggerBridge(log));
+        transformer.setErrorListener(listener);
+        // parameters can only be set before the first transformation
+        transformer.setStylesheetParameters(settings.parameters());
+        return transformer;
+    }
+
+    /**
+     * apply a stylesheet to a document. The document is the global context item as well, so global variables
+     * and parameters of the stylesheet may refer to it via {@code /}.
+     * @param transformer new transformer of the stylesheet with its parameters set, the global context item can only be
+     *                    set before its first transformation
+     */
+    static String transform(Xslt30Transformer transformer, String xml, XsltSettings settings) throws SaxonApiException {
+        XdmNode document = processor.newDocumentBuilder().build(new StreamSource(new StringReader(xml)));
+        transformer.setGlobalContextItem(document);
+        StringWriter writer = new StringWriter();
+        Serializer out = processor.newSerializer(writer);
+        out.setOutputProperty(Serializer.Property.METHOD, settings.method());
+        out.setOutputProperty(Serializer.Property.INDENT, settings.indent() ? "yes" : "no");
+        transformer.applyTemplates(document, out);
+        return writer.toString();
+    }
+
+    @Procedure(mode = Mode.WRITE, name = "atag.text.xsltAll")
+    @Description("transform a property of many nodes with one stylesheet on several threads, storing the results in another property")
+    public Stream<XsltResult> xsltAll(
+            @Name("list of nodes or label of nodes") Object nodes,
+            @Name("property key of the xml") String propertyKey,
+            @Name("xslt") String xslt,
+            @Name("property key for the result") String targetProperty,
+            @Name(value = "configuration", defaultValue = "{}") Map<String, Object> config) {
+        XsltSettings settings = XsltSettings.of(config);
+        int parallelism = Parallel.parallelism(config);
+        long batchSize = BatchTransactions.batchSize(config, 1000);
+        XsltExecutable stylesheet;
+        try {
+            stylesheet = XsltCache.get(processor, xslt);
+        } catch (SaxonApiException e) {
+            throw new IllegalArgumentException("stylesheet cannot be compiled: " + e.getMessage(), e);
+        }
+
+        // the output is dropped once written, only its length is reported
+        List<Outcome> outcomes = new ArrayList<>();
+        try (ResourceIterator<String> elementIds = Parallel.elementIds(tx, nodes);
+             BatchTransactions batches = new BatchTransactions(db, batchSize, log, "xsltAll")) {
+            Iterator<Transformed> sources = Iterators.map(elementId -> new Transformed(elementId,
+                    tx.getNodeByElementId(elementId).getProperty(propertyKey, null) instanceof String text ? text : null, null), elementIds);
+            Parallel.forEachOrdered(sources, parallelism, source -> transform(stylesheet, source, propertyKey, settings),
+                    result -> {
+                        if (result.error() == null) {
+                            batches.tx().getNodeByElementId(result.elementId()).setProperty(targetProperty, result.text());
+                            batches.done();
+                            outcomes.add(new Outcome(result.elementId(), (long) result.text().length(), null));
+                        } else {
+                            outcomes.add(new Outcome(result.elementId(), null, result.error()));
+                        }
+                    });
+            batches.commit();
+        }
+        return outcomes.stream().map(outcome ->
+                new XsltResult(tx.getNodeByElementId(outcome.elementId()), outcome.length(), outcome.error()));
+    }
+
+    /**
+     * what is reported about a transformed node
+     */
+    private record Outcome(String elementId, Long length, String error) {
+    }
+
+    /**
+     * text of a node before and after the transformation
+     */
+    private record Transformed(String elementId, String text, String error) {
+    }
+
+    /**
+     * transform a document with a new transformer, global variables of a transformer are evaluated once and
+     * therefore cannot be reused for other documents. Compared to compiling the stylesheet loading one is cheap.
+     */
+    private Transformed transform(XsltExecutable stylesheet, Transformed source, String propertyKey, XsltSettings settings) {
+        if (source.text() == null) {
+            return new Transformed(source.elementId(), null, "node has no string property %s".formatted(propertyKey));
+        }
+        try {
+            return new Transformed(source.elementId(), transform(load(stylesheet, settings), source.text(), settings), null);
+        } catch (SaxonApiException | RuntimeException e) {
+            log.warn("xsltAll: failed to transform node {}: {}", source.elementId(), e.getMessage());
+            return new Transformed(source.elementId(), null, e.getMessage());
+        }
+    }
+
+    public static class XsltResult {
+        public final Node node;
+        public final Long length;
+        public final String error;
+
+        public XsltResult(Node node, Long length, String error) {
+            this.node = node;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    public static class XsltCacheEntry {
+        public final String key;
+        public final long length;
+        public final long hits;
+        public final double compileMillis;
+        public final String compiled;
+
+        public XsltCacheEntry(XsltCache.Entry entry) {
+            this.key = entry.key();
+            this.length = entry.length();
+            this.hits = entry.hits().get();
+            this.compileMillis = entry.compileNanos() / 1_000_000.0;
+            this.compiled = entry.compiled().toString();
+        }
+    }
+
+    public static class ClearResult {
+        public final long removed;
+
+        public ClearResult(long removed) {
+            this.removed = removed;
+        }
+    }
+
+    @Procedure(mode = Mode.READ, name = "atag.text.xslt.cache.list")
+    @Description("list the compiled stylesheets cached by atag.text.xslt")
+    public Stream<XsltCacheEntry> xsltCacheList() {
+        return XsltCache.entries().stream().map(XsltCacheEntry::new);
+    }
+
+    @Procedure(mode = Mode.READ, name = "atag.text.xslt.cache.clear")
+    @Description("remove a compiled stylesheet by its key, or all of them, from the cache of atag.text.xslt")
+    public Stream<ClearResult> xsltCacheClear(@Name(value = "key", defaultValue = "") String key) {
+        return Stream.of(new ClearResult(XsltCache.clear(key.isEmpty() ? null : key)));
+    }
 }
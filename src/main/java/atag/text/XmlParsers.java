@@ -0,0 +1,90 @@
+package atag.text;
+
+import atag.util.CacheStats;
+import atag.util.LruCache;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+
+/**
+ * parsers and compiled xpath expressions shared by all imports. Looking up the factories and compiling an
+ * expression costs more than parsing a small document, so it is done once per thread: neither
+ * {@link DocumentBuilder} nor {@link XPathExpression} may be used by two threads at the same time.
+ */
+final class XmlParsers {
+
+    static final int XPATH_CACHE_SIZE = 256;
+
+    private static final CacheStats documentBuilderStats = CacheStats.register("import.xml.documentBuilder", 1);
+    private static final CacheStats xPathStats = CacheStats.register("import.xml.xpath", XPATH_CACHE_SIZE);
+
+    private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+
+    static {
+        try {
+            documentBuilderFactory.setNamespaceAware(true);
+            documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+            documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
+    private static final ThreadLocal<XPath> xPaths = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+    private static final ThreadLocal<LruCache<String, XPathExpression>> xPathCaches =
+            ThreadLocal.withInitial(() -> new LruCache<>(xPathStats));
+
+    private XmlParsers() {
+    }
+
+    /**
+     * @return a document builder of the current thread, reset to its initial configuration
+     */
+    static DocumentBuilder documentBuilder() {
+        DocumentBuilder documentBuilder = documentBuilders.get();
+        if (documentBuilder == null) {
+            documentBuilderStats.miss();
+            documentBuilder = newDocumentBuilder();
+            documentBuilders.set(documentBuilder);
+        } else {
+            documentBuilderStats.hit();
+            documentBuilder.reset();
+        }
+        documentBuilder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
+        return documentBuilder;
+    }
+
+    /**
+     * @return the compiled expression, from the cache of the current thread if it has been used before
+     */
+    static XPathExpression xPath(String expression) throws XPathExpressionException {
+        LruCache<String, XPathExpression> cache = xPathCaches.get();
+        XPathExpression xPathExpression = cache.get(expression);
+        if (xPathExpression == null) {
+            long start = System.nanoTime();
+            xPathExpression = xPaths.get().compile(expression);
+            xPathStats.load(System.nanoTime() - start);
+            cache.put(expression, xPathExpression);
+        }
+        return xPathExpression;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() {
+        // the factory is not thread-safe
+        synchronized (documentBuilderFactory) {
+            try {
+                return documentBuilderFactory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
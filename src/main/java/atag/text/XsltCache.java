@@ -0,0 +1,91 @@
+package atag.text;
+
+import atag.util.CacheStats;
+import atag.util.Hashes;
+import atag.util.LruCache;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltExecutable;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * compiled stylesheets shared by all threads, keyed by the SHA-256 hash of the stylesheet text.
+ * The cache is bounded by the number of stylesheets and by their total length, the least recently used ones are
+ * evicted first. Compiling happens outside of the lock, so a slow compilation does not block other lookups;
+ * if two threads miss the same stylesheet at the same time both compile it and the later result wins.
+ * {@link XsltExecutable} is immutable and may be used by several threads at once.
+ */
+final class XsltCache {
+
+    static final int MAX_ENTRIES = 100;
+    static final long MAX_WEIGHT = 16L * 1024 * 1024;
+
+    /**
+     * a compiled stylesheet
+     * @param key SHA-256 of the stylesheet text
+     * @param length length of the stylesheet text, used as its weight
+     */
+    record Entry(String key, XsltExecutable executable, int length, long compileNanos, Instant compiled, AtomicLong hits) {
+    }
+
+    private static final CacheStats stats = CacheStats.register("xslt", MAX_ENTRIES);
+    private static final LruCache<String, Entry> cache = new LruCache<>(stats, MAX_WEIGHT, Entry::length);
+
+    private XsltCache() {
+    }
+
+    /**
+     * @return the compiled stylesheet, compiled now if it is not cached yet
+     * @throws SaxonApiException if the stylesheet cannot be compiled
+     */
+    static XsltExecutable get(Processor processor, String xslt) throws SaxonApiException {
+        String key = Hashes.sha256(xslt);
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry != null) {
+            entry.hits().incrementAndGet();
+            return entry.executable();
+        }
+
+        long start = System.nanoTime();
+        // a compiler must not be used by several threads at once, creating one is cheap
+        XsltExecutable executable = processor.newXsltCompiler().compile(new StreamSource(new StringReader(xslt)));
+        long compileNanos = System.nanoTime() - start;
+        stats.load(compileNanos);
+        synchronized (cache) {
+            cache.put(key, new Entry(key, executable, xslt.length(), compileNanos, Instant.now(), new AtomicLong()));
+        }
+        return executable;
+    }
+
+    /**
+     * @return cached stylesheets from least to most recently used
+     */
+    static List<Entry> entries() {
+        synchronized (cache) {
+            return cache.values();
+        }
+    }
+
+    /**
+     * remove one stylesheet, or all of them if key is null
+     * @return number of stylesheets removed
+     */
+    static long clear(String key) {
+        synchronized (cache) {
+            if (key != null) {
+                return cache.remove(key) == null ? 0 : 1;
+            }
+            long size = cache.size();
+            cache.clear();
+            return size;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package atag.util;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.Map;
+
+/**
+ * writes on the calling thread in transactions of a fixed number of units, e.g. documents.
+ * A transaction is opened on first use and committed once {@code batchSize} units are done.
+ * Transactions committed before a failure are kept, the current one is rolled back by {@link #close()}.
+ */
+public class BatchTransactions implements AutoCloseable {
+
+    private final GraphDatabaseService db;
+    private final long batchSize;
+    private final Log log;
+    private final String name;
+
+    private Transaction tx;
+    private long pending;
+    private long committed;
+
+    /**
+     * @param name name of the procedure, used for progress messages
+     */
+    public BatchTransactions(GraphDatabaseService db, long batchSize, Log log, String name) {
+        this.db = db;
+        this.batchSize = batchSize;
+        this.log = log;
+        this.name = name;
+    }
+
+    /**
+     * @param config procedure configuration, {@code batchSize} is used if present
+     * @return configured batch size
+     */
+    public static long batchSize(Map<String, Object> config, long defaultValue) {
+        long batchSize = ((Number) config.getOrDefault("batchSize", defaultValue)).longValue();
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        return batchSize;
+    }
+
+    /**
+     * @return the current transaction, a new one if the previous batch has been committed
+     */
+    public Transaction tx() {
+        if (tx == null) {
+            tx = db.beginTx();
+        }
+        return tx;
+    }
+
+    /**
+     * count a unit written in the current transaction, commit if the batch is full
+     */
+    public void done() {
+        pending++;
+        if (pending >= batchSize) {
+            commit();
+        }
+    }
+
+    /**
+     * commit the current transaction, if any
+     */
+    public void commit() {
+        if (tx != null) {
+            tx.commit();
+            tx.close();
+            tx = null;
+        }
+        if (pending > 0) {
+            committed += pending;
+            log.info("{}: committed {}, {} so far", name, pending, committed);
+            pending = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (tx != null) {
+            tx.close();
+            tx = null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package atag.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hit and miss counters of a named cache, shared by all threads using it.
+ * Caches register themselves once, so their statistics can be listed by a procedure.
+ */
+public final class CacheStats {
+
+    private static final Map<String, CacheStats> registry = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final int capacity;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    private CacheStats(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param name unique name of the cache
+     * @param capacity maximum number of entries, per thread for thread local caches
+     * @return the statistics registered under this name
+     */
+    public static CacheStats register(String name, int capacity) {
+        return registry.computeIfAbsent(name, n -> new CacheStats(n, capacity));
+    }
+
+    /**
+     * @return statistics of all registered caches ordered by name
+     */
+    public static Collection<CacheStats> all() {
+        return registry.values().stream().sorted((a, b) -> a.name.compareTo(b.name)).toList();
+    }
+
+    public void hit() {
+        hits.incrementAndGet();
+    }
+
+    public void miss() {
+        misses.incrementAndGet();
+    }
+
+    public void eviction() {
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * account for the time spent creating an entry after a miss, e.g. compiling
+     */
+    public void load(long nanos) {
+        loadNanos.addAndGet(nanos);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return total time spent creating entries in milliseconds
+     */
+    public double loadMillis() {
+        return loadNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return hit ratio between 0 and 1, 0 if the cache has not been used yet
+     */
+    public double hitRatio() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
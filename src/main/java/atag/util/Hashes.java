@@ -0,0 +1,27 @@
+package atag.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * hashes used as cache keys
+ */
+public final class Hashes {
+
+    private Hashes() {
+    }
+
+    /**
+     * @return SHA-256 hash of the UTF-8 encoded text as 64 lower case hex digits
+     */
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package atag.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * a map of bounded size evicting the least recently used entries. Not thread-safe, use one instance per thread
+ * or synchronize access. Several instances may count into the same {@link CacheStats}.
+ * <p>
+ * Besides the number of entries given by the capacity of its statistics, the total weight of the entries can be
+ * bounded, e.g. their size in characters. A single entry heavier than the limit is kept until the next one is added.
+ */
+public class LruCache<K, V> {
+
+    private final CacheStats stats;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    public LruCache(CacheStats stats) {
+        this(stats, Long.MAX_VALUE, value -> 0);
+    }
+
+    /**
+     * @param maxWeight upper bound for the sum of the weights of all entries
+     * @param weigher weight of an entry
+     */
+    public LruCache(CacheStats stats, long maxWeight, ToLongFunction<V> weigher) {
+        this.stats = stats;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the cached value, null if there is none
+     */
+    public V get(K key) {
+        V value = map.get(key);
+        if (value == null) {
+            stats.miss();
+        } else {
+            stats.hit();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        V previous = map.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += weigher.applyAsLong(value);
+
+        Iterator<V> eldest = map.values().iterator();
+        while (map.size() > 1 && (map.size() > stats.capacity() || weight > maxWeight)) {
+            weight -= weigher.applyAsLong(eldest.next());
+            eldest.remove();
+            stats.eviction();
+        }
+    }
+
+    /**
+     * @return the removed value, null if there was none
+     */
+    public V remove(K key) {
+        V value = map.remove(key);
+        if (value != null) {
+            weight -= weigher.applyAsLong(value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the entries from least to most recently used, without affecting their order
+     */
+    public List<V> values() {
+        return new ArrayList<>(map.values());
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long weight() {
+        return weight;
+    }
+
+    public void clear() {
+        map.clear();
+        weight = 0;
+    }
+}
@@ -0,0 +1,79 @@
+package atag.util;
+
+import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.IndexType;
+import org.neo4j.internal.helpers.collection.Iterables;
+import org.neo4j.logging.Log;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * looks up nodes by label and property value, e.g. by uuid.
+ * <p>
+ * On first use per database, label and property key it is checked whether an index backs the lookup,
+ * without one every lookup is a label scan and a warning is logged.
+ */
+public class NodeLookup {
+
+    private static final Set<String> checked = ConcurrentHashMap.newKeySet();
+
+    private final Transaction tx;
+    private final Label label;
+    private final String propertyKey;
+
+    private NodeLookup(Transaction tx, Label label, String propertyKey) {
+        this.tx = tx;
+        this.label = label;
+        this.propertyKey = propertyKey;
+    }
+
+    /**
+     * @param db database, used to check for an index once per database
+     * @param tx current transaction
+     * @param log log receiving the warning about a missing index
+     */
+    public static NodeLookup of(GraphDatabaseService db, Transaction tx, Log log, Label label, String propertyKey) {
+        if (checked.add(db.databaseName() + ":" + label.name() + ":" + propertyKey) && !isIndexed(tx, label, propertyKey)) {
+            log.warn("no index for :{}({}), each lookup is a label scan. Use atag.schema.createIndexes or CREATE INDEX FOR (n:{}) ON (n.{})",
+                    label.name(), propertyKey, label.name(), propertyKey);
+        }
+        return new NodeLookup(tx, label, propertyKey);
+    }
+
+    /**
+     * @return the node with the given property value, null if there is none
+     */
+    public Node find(Object value) {
+        return tx.findNode(label, propertyKey, value);
+    }
+
+    /**
+     * @return description of the lookup for error messages
+     */
+    public String describe(Object value) {
+        return "label %s and property %s=%s".formatted(label.name(), propertyKey, value);
+    }
+
+    /**
+     * @return true if a range or text index on exactly this label and property exists
+     */
+    public static boolean isIndexed(Transaction tx, Label label, String propertyKey) {
+        for (IndexDefinition index: tx.schema().getIndexes(label)) {
+            IndexType type = index.getIndexType();
+            if ((type == IndexType.RANGE || type == IndexType.TEXT) && !index.isMultiTokenIndex()
+                    && List.of(propertyKey).equals(Iterables.asList(index.getPropertyKeys()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * forget which indexes have been checked, e.g. after creating indexes
+     */
+    public static void resetChecks() {
+        checked.clear();
+    }
+}
@@ -0,0 +1,115 @@
+package atag.util;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterators;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * helper to run independent tasks on a bounded pool of worker threads
+ */
+public final class Parallel {
+
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private Parallel() {
+    }
+
+    /**
+     * @param config procedure configuration, {@code parallelism} is used if present
+     * @return configured parallelism, defaults to the number of available processors
+     */
+    public static int parallelism(Map<String, Object> config) {
+        return parallelism(config, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param config procedure configuration, {@code parallelism} is used if present
+     * @param defaultValue parallelism if none is configured, e.g. for tasks waiting on the network
+     * @return configured parallelism
+     */
+    public static int parallelism(Map<String, Object> config, int defaultValue) {
+        Object value = config.get("parallelism");
+        int parallelism = value == null ? defaultValue : ((Number) value).intValue();
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        return parallelism;
+    }
+
+    /**
+     * element ids of the nodes to be processed, resolved lazily so a task can load its node in its own transaction
+     * @param nodes a list of nodes or the name of a label
+     */
+    @SuppressWarnings("unchecked")
+    public static ResourceIterator<String> elementIds(Transaction tx, Object nodes) {
+        if (nodes instanceof String label) {
+            ResourceIterator<Node> iterator = tx.findNodes(Label.label(label));
+            return Iterators.resourceIterator(Iterators.map(Node::getElementId, iterator), iterator::close);
+        } else if (nodes instanceof List<?> list) {
+            return Iterators.asResourceIterator(((List<Node>) list).stream().map(Node::getElementId).iterator());
+        } else {
+            throw new IllegalArgumentException("nodes must be a list of nodes or a label");
+        }
+    }
+
+    /**
+     * apply a task to each input element using {@code parallelism} worker threads.
+     * The results are handed to the consumer on the calling thread, in the order of the input.
+     * At most twice as many tasks as there are workers are pending at any time,
+     * so the input is consumed lazily and memory stays bounded.
+     *
+     * @param input elements to be processed
+     * @param parallelism number of worker threads
+     * @param task function to be applied on a worker thread
+     * @param consumer receives the results on the calling thread
+     */
+    public static <T, R> void forEachOrdered(Iterator<T> input, int parallelism, Function<T, R> task, Consumer<R> consumer) {
+        int poolNumber = poolCounter.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "atag-%d-worker-%d".formatted(poolNumber, threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ArrayDeque<Future<R>> pending = new ArrayDeque<>();
+            while (input.hasNext()) {
+                T element = input.next();
+                pending.add(executor.submit(() -> task.apply(element)));
+                if (pending.size() >= 2 * parallelism) {
+                    consumer.accept(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(await(pending.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
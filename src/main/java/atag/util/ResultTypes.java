@@ -15,11 +15,93 @@ public class ResultTypes {
         }
     }
 
+    /**
+     * result of building a chain, depending on the requested result mode either the full path,
+     * a summary (first, last, count) or a single node with its position (index, node) is populated
+     */
+    public static class ChainResult {
+        public final Path path;
+        public final Node first;
+        public final Node last;
+        public final Long count;
+        public final Long index;
+        public final Node node;
+
+        private ChainResult(Path path, Node first, Node last, Long count, Long index, Node node) {
+            this.path = path;
+            this.first = first;
+            this.last = last;
+            this.count = count;
+            this.index = index;
+            this.node = node;
+        }
+
+        public static ChainResult ofPath(Path path) {
+            return new ChainResult(path, null, null, null, null, null);
+        }
+
+        public static ChainResult ofSummary(Node first, Node last, long count) {
+            return new ChainResult(null, first, last, count, null, null);
+        }
+
+        public static ChainResult ofNode(long index, Node node) {
+            return new ChainResult(null, null, null, null, index, node);
+        }
+    }
+
+    /**
+     * result of replacing a fragment of a chain: the new fragment and how many element nodes
+     * have been reused, created and deleted
+     */
+    public static class UpdateResult {
+        public final Path path;
+        public final long reused;
+        public final long created;
+        public final long deleted;
+
+        public UpdateResult(Path path, long reused, long created, long deleted) {
+            this.path = path;
+            this.reused = reused;
+            this.created = created;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * statistics of a cache, see {@link CacheStats}
+     */
+    public static class CacheStatsResult {
+        public final String name;
+        public final long capacity;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final double hitRatio;
+        public final double loadMillis;
+
+        public CacheStatsResult(CacheStats stats) {
+            this.name = stats.name();
+            this.capacity = stats.capacity();
+            this.hits = stats.hits();
+            this.misses = stats.misses();
+            this.evictions = stats.evictions();
+            this.hitRatio = stats.hitRatio();
+            this.loadMillis = stats.loadMillis();
+        }
+    }
+
     public static class NodeResult {
         public final Node node;
+        public final Long startIndex;
+        public final Long endIndex;
 
-        public NodeResult(Node node) {
+        /**
+         * @param offsets current {@code startIndex} and {@code endIndex} of the node, null if it has none
+         */
+        public NodeResult(Node node, long[] offsets) {
             this.node = node;
+            this.startIndex = offsets == null ? null : offsets[0];
+            this.endIndex = offsets == null ? null : offsets[1];
         }
     }
 }
@@ -31,6 +31,7 @@ public class ChainsProcedureTest {
     static Neo4jExtension neo4j = Neo4jExtension.builder()
             //.withDisabledServer()
             .withProcedure(ChainsProcedure.class)
+            .withFunction(ChainsProcedure.class)
             /*.withFixture(db -> {
                 try {
 
@@ -93,7 +94,7 @@ public class ChainsProcedureTest {
                 params,
                 result -> {
                     Map<String, Object> singleResult = Iterators.singleOrNull(result);
-                    if (singleResult == null) {
+                    if (singleResult == null || singleResult.get("path") == null) {
                         assertEquals(expectedPathLength, 0);
                         return false;
                     } else {
@@ -196,6 +197,71 @@ public class ChainsProcedureTest {
         });
     }
 
+    @Test
+    public void testCharacterChainSummary(GraphDatabaseService db) {
+        String text = "what a nice text";
+        db.executeTransactionally("""
+                CALL atag.chains.characterChain($text, true, {resultMode: 'summary'}) YIELD path, first, last, count
+                RETURN path, first.text AS first, last.text AS last, count""", Map.of( "text", text), result -> {
+            Map<String, Object> map = Iterators.single(result);
+            assertNull(map.get("path"));
+            assertEquals("w", map.get("first"));
+            assertEquals("t", map.get("last"));
+            assertEquals(16L, map.get("count"));
+            return true;
+        });
+    }
+
+    @Test
+    public void testTokenChainNodes(GraphDatabaseService db) {
+        String text = "here's a comma";
+        db.executeTransactionally("""
+                CALL atag.chains.tokenChain($text, true, {resultMode: 'nodes'}) YIELD index, node
+                RETURN index, node.text AS text""", Map.of( "text", text), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(List.of("here", "'", "s", " ", "a", " ", "comma"), rows.stream().map(row -> row.get("text")).toList());
+            for (int i = 0; i < rows.size(); i++) {
+                assertEquals((long) i, rows.get(i).get("index"));
+            }
+            return true;
+        });
+        assertTokenCount(7).accept(db);
+    }
+
+    @Test
+    public void testChainInvalidResultMode(GraphDatabaseService db) {
+        QueryExecutionException e = assertThrows(QueryExecutionException.class, () -> db.executeTransactionally(
+                "CALL atag.chains.characterChain('abc', true, {resultMode: 'unknown'})"));
+        assertEquals(IllegalArgumentException.class, ExceptionUtils.getRootCause(e).getClass());
+    }
+
+    @Test
+    public void testCharacterChainBatched(GraphDatabaseService db) {
+        String text = "what a nice text, batched";
+        List<Map<String, Object>> batches = db.executeTransactionally(
+                "CALL atag.chains.characterChainBatched($text, 10) YIELD batch, count, total RETURN batch, count, total",
+                Map.of("text", text), Iterators::asList);
+
+        assertEquals(3, batches.size());
+        assertEquals(List.of(10L, 10L, 5L), batches.stream().map(row -> row.get("count")).toList());
+        assertEquals(25L, batches.get(2).get("total"));
+
+        // chain must be continuous across batch boundaries
+        db.executeTransactionally("""
+                MATCH path=(first:Character)-[:NEXT_CHARACTER*]->(last:Character)
+                WHERE NOT ()-[:NEXT_CHARACTER]->(first) AND NOT (last)-[:NEXT_CHARACTER]->()
+                RETURN path""", Collections.emptyMap(), result -> {
+            Path path = (Path) Iterators.single(result).get("path");
+            assertEquals(text.length() - 1, path.length());
+            List<Node> nodes = Iterables.asList(path.nodes());
+            for (int i = 0; i < nodes.size(); i++) {
+                assertEquals(Character.toString(text.charAt(i)), nodes.get(i).getProperty("text"));
+                assertEquals(i, nodes.get(i).getProperty(ChainsProcedure.PROPERTY_START_INDEX));
+            }
+            return true;
+        });
+    }
+
     @Test
     public void testFullChain(GraphDatabaseService db) {
 
@@ -212,6 +278,373 @@ public class ChainsProcedureTest {
         });
     }
 
+    @Test
+    public void testFullChainTokenBoundaries(GraphDatabaseService db) {
+        String text = "here's a comma, in this text";
+        db.executeTransactionally("CREATE (s:Text{text:$text}) WITH s CALL atag.chains.fullChain(s, 'text') RETURN s", Map.of( "text", text));
+
+        db.executeTransactionally("""
+                MATCH (:Text)-[:NEXT_TOKEN]->(first:Token)
+                MATCH (first)-[:NEXT_TOKEN*0..]->(t:Token)
+                MATCH (t)-[:TOKEN_START]->(s:Character), (t)-[:TOKEN_END]->(e:Character)
+                RETURN t.text AS token, t.startIndex AS tokenStart, t.endIndex AS tokenEnd, s.startIndex AS start, e.startIndex AS end""",
+                Collections.emptyMap(), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(14, rows.size());
+            for (Map<String, Object> row : rows) {
+                assertEquals(row.get("tokenStart"), row.get("start"));
+                assertEquals(row.get("tokenEnd"), row.get("end"));
+                assertEquals(row.get("token"), text.substring((int) row.get("start"), (int) row.get("end") + 1));
+            }
+            return true;
+        });
+
+        db.executeTransactionally("""
+                MATCH path=(:Text)-[:NEXT_CHARACTER*]->(last) WHERE NOT (last)-[:NEXT_CHARACTER]->()
+                RETURN length(path) AS length""", Collections.emptyMap(), result -> {
+            assertEquals((long) text.length(), Iterators.single(result).get("length"));
+            return true;
+        });
+    }
+
+    @Test
+    public void testFullChainParallel(GraphDatabaseService db) {
+        db.executeTransactionally("UNWIND range(1, 20) AS id CREATE (:Text{id: id, text: 'text number ' + id})");
+        db.executeTransactionally("CREATE (:Text{id: 21})");
+
+        db.executeTransactionally("""
+                CALL atag.chains.fullChainParallel('Text', 'text', {parallelism: 4}) YIELD node, characters, tokens, error
+                RETURN node.id AS id, characters, tokens, error ORDER BY id""", Collections.emptyMap(), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(21, rows.size());
+            for (Map<String, Object> row : rows.subList(0, 20)) {
+                String text = "text number " + row.get("id");
+                assertEquals((long) text.length(), row.get("characters"));
+                assertEquals(5L, row.get("tokens"));
+                assertNull(row.get("error"));
+            }
+            assertEquals(0L, rows.get(20).get("characters"));
+            assertNotNull(rows.get(20).get("error"));
+            return true;
+        });
+
+        db.executeTransactionally("""
+                MATCH (t:Text) WHERE t.text IS NOT NULL
+                MATCH path=(t)-[:NEXT_CHARACTER*]->(last) WHERE NOT (last)-[:NEXT_CHARACTER]->()
+                RETURN count(*) AS count, sum(length(path) - size(t.text)) AS diff""", Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(20L, row.get("count"));
+            assertEquals(0L, row.get("diff"));
+            return true;
+        });
+    }
+
+    @Test
+    public void testFullChainParallelWithNodeList(GraphDatabaseService db) {
+        db.executeTransactionally("UNWIND range(1, 3) AS id CREATE (:Text{id: id, text: 'abc'})");
+        long count = db.executeTransactionally("""
+                MATCH (t:Text) WITH collect(t) AS texts
+                CALL atag.chains.fullChainParallel(texts, 'text', {parallelism: 2}) YIELD error
+                WITH error WHERE error IS NULL
+                RETURN count(*) AS count""", Collections.emptyMap(), result -> (long) Iterators.single(result).get("count"));
+        assertEquals(3L, count);
+    }
+
+    private static String charactersByNodeAt(GraphDatabaseService db, String rootMatch, int length) {
+        return db.executeTransactionally(rootMatch + """
+                UNWIND range(0, $length - 1) AS position
+                RETURN atag.chains.nodeAt(root, position).text AS text""", Map.of("length", length), result -> {
+            StringBuilder sb = new StringBuilder();
+            result.forEachRemaining(row -> sb.append(row.get("text")));
+            return sb.toString();
+        });
+    }
+
+    @Test
+    public void testNodeAtWithIndex(GraphDatabaseService db) {
+        String text = "what a nice text, long enough for several checkpoints";
+        db.executeTransactionally("CREATE (s:Text{text:$text}) WITH s CALL atag.chains.fullChain(s, 'text', true, {indexStride: 4}) RETURN s",
+                Map.of("text", text));
+
+        assertEquals(text, charactersByNodeAt(db, "MATCH (root:Text) ", text.length()));
+        db.executeTransactionally("MATCH (root:Text) RETURN atag.chains.nodeAt(root, $length) AS node", Map.of("length", text.length()),
+                result -> {
+                    assertNull(Iterators.single(result).get("node"));
+                    return true;
+                });
+
+        String range = db.executeTransactionally("""
+                MATCH (root:Text) CALL atag.chains.range(root, 5, 11) YIELD node
+                RETURN reduce(s = '', n IN collect(node) | s + n.text) AS text""", Collections.emptyMap(),
+                result -> (String) Iterators.single(result).get("text"));
+        assertEquals(text.substring(5, 11), range);
+    }
+
+    @Test
+    public void testNodeAtOnCharacterChain(GraphDatabaseService db) {
+        String text = "what a nice text";
+        db.executeTransactionally("CALL atag.chains.characterChain($text, true, {indexStride: 3, resultMode: 'summary'})", Map.of("text", text));
+        assertEquals(text, charactersByNodeAt(db, "MATCH (root:Character{startIndex: 0}) ", text.length()));
+    }
+
+    /**
+     * creates a text node with uuid 'text' and a character chain with uuids c0, c1, ...
+     */
+    private static void createCharacterFixture(GraphDatabaseService db, String text, boolean applyIndexProperties) {
+        try (var tx = db.beginTx()) {
+            Node currentNode = tx.createNode(Label.label("Text"));
+            currentNode.setProperty("uuid", "text");
+            for (int i = 0; i < text.length(); i++) {
+                Node nextNode = tx.createNode(Label.label("Character"));
+                nextNode.setProperty("uuid", "c" + i);
+                nextNode.setProperty("text", text.substring(i, i + 1));
+                if (applyIndexProperties) {
+                    nextNode.setProperty(ChainsProcedure.PROPERTY_START_INDEX, i);
+                    nextNode.setProperty(ChainsProcedure.PROPERTY_END_INDEX, i);
+                }
+                currentNode.createRelationshipTo(nextNode, ChainsProcedure.REL_NEXT_CHARACTER);
+                currentNode = nextNode;
+            }
+            tx.commit();
+        }
+    }
+
+    /**
+     * checks the stored startIndex/endIndex properties as well as the offsets read through the log
+     */
+    private static void assertStoredOffsets(GraphDatabaseService db, String expectedText) {
+        assertOffsets(db, expectedText);
+        db.executeTransactionally("""
+                MATCH (t:Text{uuid: 'text'})-[:NEXT_CHARACTER*]->(c)
+                RETURN c.startIndex AS startIndex, c.endIndex AS endIndex""", Collections.emptyMap(), result -> {
+            long offset = 0;
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                assertEquals(offset, ((Number) row.get("startIndex")).longValue());
+                offset = ((Number) row.get("endIndex")).longValue() + 1;
+            }
+            assertEquals(expectedText.length(), offset);
+            return true;
+        });
+    }
+
+    private static void assertOffsets(GraphDatabaseService db, String expectedText) {
+        db.executeTransactionally("""
+                MATCH (t:Text{uuid: 'text'})-[:NEXT_CHARACTER*]->(c)
+                RETURN c.text AS text, atag.chains.offsets(t, c) AS offsets""", Collections.emptyMap(), result -> {
+            StringBuilder sb = new StringBuilder();
+            result.forEachRemaining(row -> {
+                Map<?, ?> offsets = (Map<?, ?>) row.get("offsets");
+                assertEquals((long) sb.length(), offsets.get(ChainsProcedure.PROPERTY_START_INDEX));
+                sb.append(row.get("text"));
+                assertEquals((long) sb.length() - 1, offsets.get(ChainsProcedure.PROPERTY_END_INDEX));
+            });
+            assertEquals(expectedText, sb.toString());
+            return true;
+        });
+    }
+
+    @Test
+    public void testUpdateMaintainsOffsets(GraphDatabaseService db) {
+        createCharacterFixture(db, "abcdefghij", true);
+
+        db.executeTransactionally("""
+                CALL atag.chains.update('text', 'c2', 'c5', [
+                    {uuid: 'n1', text: 'X'}, {uuid: 'n2', text: 'Y'}, {uuid: 'n3', text: 'Z'}
+                ], {offsetLog: false})""");
+        assertStoredOffsets(db, "abcXYZfghij");
+
+        db.executeTransactionally("CALL atag.chains.update('text', '', 'c2', [], {offsetLog: false})");
+        assertStoredOffsets(db, "cXYZfghij");
+
+        db.executeTransactionally("CALL atag.chains.update('text', 'c8', '', [{uuid: 'c9', text: 'j'}, {uuid: 'n4', text: 'KL'}], {offsetLog: false})");
+        assertStoredOffsets(db, "cXYZfghijKL");
+        db.executeTransactionally("MATCH (t:Text) RETURN t.offsetLogThresholds_NEXT_CHARACTER AS log", Collections.emptyMap(), result -> {
+            assertNull(Iterators.single(result).get("log"));
+            return true;
+        });
+    }
+
+    @Test
+    public void testUpdateWithOffsetLog(GraphDatabaseService db) {
+        createCharacterFixture(db, "abcdefghij", true);
+
+        db.executeTransactionally("""
+                CALL atag.chains.update('text', 'c2', 'c5', [
+                    {uuid: 'n1', text: 'X'}, {uuid: 'n2', text: 'Y'}, {uuid: 'n3', text: 'Z'}
+                ], {})""");
+        assertOffsets(db, "abcXYZfghij");
+
+        db.executeTransactionally("CALL atag.chains.update('text', '', 'c2', [], {})");
+        assertOffsets(db, "cXYZfghij");
+
+        db.executeTransactionally("CALL atag.chains.update('text', 'c8', '', [{uuid: 'c9', text: 'j'}, {uuid: 'n4', text: 'KL'}], {})");
+        assertOffsets(db, "cXYZfghijKL");
+
+        // untouched nodes keep their stored offsets until the chain is reindexed
+        db.executeTransactionally("MATCH (c:Character{uuid: 'c7'}) RETURN c.startIndex AS startIndex", Collections.emptyMap(), result -> {
+            assertEquals(7, Iterators.single(result).get("startIndex"));
+            return true;
+        });
+        db.executeTransactionally("MATCH (t:Text) CALL atag.chains.reindex(t) RETURN count(*)");
+        db.executeTransactionally("""
+                MATCH (t:Text)-[:NEXT_CHARACTER*]->(c:Character{uuid: 'c7'})
+                RETURN c.startIndex AS startIndex, t.offsetLogThresholds_NEXT_CHARACTER AS log""", Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(6, row.get("startIndex"));
+            assertNull(row.get("log"));
+            return true;
+        });
+        assertOffsets(db, "cXYZfghijKL");
+
+        // range returns the offsets through the log
+        db.executeTransactionally("CALL atag.chains.update('text', 'c2', 'n2', [], {})");
+        db.executeTransactionally("""
+                MATCH (t:Text) CALL atag.chains.range(t, 1, 3) YIELD node, startIndex, endIndex
+                RETURN collect(node.uuid + ':' + startIndex + '-' + endIndex) AS offsets""", Collections.emptyMap(), result -> {
+            assertEquals(List.of("n2:1-1", "n3:2-2"), Iterators.single(result).get("offsets"));
+            return true;
+        });
+
+        // an update with offsetLog: false applies a pending log first
+        db.executeTransactionally("CALL atag.chains.update('text', 'n4', '', [], {offsetLog: false})");
+        assertStoredOffsets(db, "cYZfghijKL");
+    }
+
+    @Test
+    public void testUpdateStatistics(GraphDatabaseService db) {
+        createCharacterFixture(db, "abcdefghij", false);
+        db.executeTransactionally("""
+                CALL atag.chains.update('text', 'c2', 'c7', [{uuid: 'c3', text: 'd'}, {uuid: 'n1', text: 'X'}, {uuid: 'c6', text: 'G'}], {})
+                YIELD path, reused, created, deleted
+                RETURN length(path) AS length, reused, created, deleted""", Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(2L, row.get("length"));
+            assertEquals(2L, row.get("reused"));
+            assertEquals(1L, row.get("created"));
+            assertEquals(2L, row.get("deleted"));
+            return true;
+        });
+        db.executeTransactionally("CALL atag.chains.update('text', 'c0', 'c3', [], {}) YIELD path, deleted RETURN path, deleted",
+                Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertNull(row.get("path"));
+            assertEquals(2L, row.get("deleted"));
+            return true;
+        });
+        assertEquals("adXGhij", charactersByNodeAt(db, "MATCH (root:Text) ", 7));
+    }
+
+    @Test
+    public void testUpdateBatch(GraphDatabaseService db) {
+        createCharacterFixture(db, "abcdefghij", true);
+        db.executeTransactionally("MATCH (t:Text) CALL atag.chains.createIndex(t, 3) RETURN count(*)");
+
+        db.executeTransactionally("""
+                CALL atag.chains.updateBatch('text', [
+                    {uuidBefore: '', uuidAfter: 'c1', replacement: [{uuid: 'x0', text: 'X'}]},
+                    {uuidBefore: 'c3', uuidAfter: 'c6', replacement: []},
+                    {uuidBefore: 'c8', uuidAfter: '', replacement: [{uuid: 'c9', text: 'j'}, {uuid: 'n1', text: 'KL'}]}
+                ]) YIELD reused, created, deleted
+                RETURN collect([reused, created, deleted]) AS statistics""", Collections.emptyMap(), result -> {
+            assertEquals(List.of(List.of(0L, 1L, 1L), List.of(0L, 0L, 2L), List.of(1L, 1L, 0L)),
+                    Iterators.single(result).get("statistics"));
+            return true;
+        });
+        assertOffsets(db, "XbcdghijKL");
+        assertEquals("Xbcdghij", charactersByNodeAt(db, "MATCH (root:Text) ", 8));
+        db.executeTransactionally("MATCH (t:Text) RETURN atag.chains.nodeAt(t, 8).text AS text", Collections.emptyMap(), result -> {
+            assertEquals("KL", Iterators.single(result).get("text"));
+            return true;
+        });
+    }
+
+    public static Stream<Arguments> testUpdateBatchOverlap() {
+        return Stream.of(
+                Arguments.of("c1", "c5", "c3", "c7"),
+                Arguments.of("c1", "c3", "c1", "c5"),
+                Arguments.of("c1", "c5", "c3", "c4"),
+                Arguments.of("", "c2", "", "c5")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    public void testUpdateBatchOverlap(String before1, String after1, String before2, String after2, GraphDatabaseService db) {
+        createCharacterFixture(db, "abcdefghij", false);
+        QueryExecutionException e = assertThrows(QueryExecutionException.class, () -> db.executeTransactionally("""
+                CALL atag.chains.updateBatch('text', [
+                    {uuidBefore: $before1, uuidAfter: $after1, replacement: []},
+                    {uuidBefore: $before2, uuidAfter: $after2, replacement: []}
+                ])""", Map.of("before1", before1, "after1", after1, "before2", before2, "after2", after2)));
+        assertEquals(IllegalArgumentException.class, ExceptionUtils.getRootCause(e).getClass());
+        db.executeTransactionally("MATCH (c:Character) RETURN count(c) AS count", Collections.emptyMap(), result -> {
+            assertEquals(10L, Iterators.single(result).get("count"));
+            return true;
+        });
+    }
+
+    @Test
+    public void testUpdateCompactsOffsetLog(GraphDatabaseService db) {
+        createCharacterFixture(db, "abcdefghij", true);
+        db.executeTransactionally("CALL atag.chains.update('text', 'c2', 'c5', [{uuid: 'n1', text: 'X'}], {maxOffsetLogSize: 1})");
+        db.executeTransactionally("CALL atag.chains.update('text', 'c6', 'c9', [], {maxOffsetLogSize: 1})");
+        db.executeTransactionally("""
+                MATCH (t:Text)-[:NEXT_CHARACTER*]->(c:Character{uuid: 'c9'})
+                RETURN c.startIndex AS startIndex, t.offsetLogThresholds_NEXT_CHARACTER AS log""", Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(6, row.get("startIndex"));
+            assertNull(row.get("log"));
+            return true;
+        });
+        assertOffsets(db, "abcXfgj");
+    }
+
+    @Test
+    public void testNodeAtMaintainedByUpdate(GraphDatabaseService db) {
+        String text = "abcdefghijklmnopqrst";
+        createCharacterFixture(db, text, false);
+        db.executeTransactionally("MATCH (t:Text) CALL atag.chains.createIndex(t, 4) RETURN count(*)");
+
+        // replace ghi by 12345 and drop the first two characters
+        db.executeTransactionally("""
+                CALL atag.chains.update('text', 'c5', 'c9', [
+                    {uuid: 'n1', text: '1'}, {uuid: 'n2', text: '2'}, {uuid: 'n3', text: '3'}, {uuid: 'n4', text: '4'}, {uuid: 'n5', text: '5'}
+                ], {})""");
+        db.executeTransactionally("CALL atag.chains.update('text', '', 'c2', [], {})");
+
+        String expected = "cdef12345jklmnopqrst";
+        assertEquals(expected, charactersByNodeAt(db, "MATCH (root:Text) ", expected.length()));
+    }
+
+    @Test
+    public void testNodeAtMaintainedAcrossIndexBlocks(GraphDatabaseService db) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * ChainIndex.BLOCK_SIZE; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        createCharacterFixture(db, text.toString(), false);
+        db.executeTransactionally("MATCH (t:Text) CALL atag.chains.createIndex(t, 1) RETURN count(*)");
+
+        // remove elements of the first two blocks, insert into the last one and replace an element by itself
+        String lastBlock = "c" + (2 * ChainIndex.BLOCK_SIZE + 10);
+        db.executeTransactionally("""
+                CALL atag.chains.updateBatch('text', [
+                    {uuidBefore: 'c200', uuidAfter: 'c300', replacement: [{uuid: 'n1', text: 'X'}]},
+                    {uuidBefore: $before, uuidAfter: $after, replacement: [{uuid: 'n2', text: 'Y'}, {uuid: 'n3', text: 'Z'}]},
+                    {uuidBefore: 'c5', uuidAfter: 'c7', replacement: [{uuid: 'c6', text: 'g'}]}
+                ])""", Map.of("before", lastBlock, "after", "c" + (2 * ChainIndex.BLOCK_SIZE + 11)));
+        String expected = text.substring(0, 201) + "X" + text.substring(300, 2 * ChainIndex.BLOCK_SIZE + 11) + "YZ"
+                + text.substring(2 * ChainIndex.BLOCK_SIZE + 11);
+        assertEquals(expected, charactersByNodeAt(db, "MATCH (root:Text) ", expected.length()));
+
+        // the first two blocks still hold more than one block of checkpoints, the last one has been split
+        db.executeTransactionally("MATCH (t:Text) RETURN t.chainIndexBlocks AS blocks", Collections.emptyMap(), result -> {
+            assertEquals(4, ((int[]) Iterators.single(result).get("blocks")).length);
+            return true;
+        });
+    }
+
     @ParameterizedTest
     @MethodSource
     public void testTokenChain(String text, int expected, GraphDatabaseService db) {
@@ -222,6 +655,16 @@ public class ChainsProcedureTest {
         assertEquals(expected, pathLength);
     }
 
+    @Test
+    public void testTokenChainBreakIterator(GraphDatabaseService db) {
+        int pathLength = db.executeTransactionally(
+                "CALL atag.chains.tokenChain($text, true, {tokenizer: 'breakIterator', locale: 'en'}) YIELD path RETURN path",
+                Map.of("text", "what  a nice text"),
+                result -> ((Path) Iterators.single(result).get("path")).length()
+        );
+        assertEquals(6, pathLength);
+    }
+
     public static Stream<Arguments> testChainUpdate() {
 
         return Stream.of(
@@ -0,0 +1,90 @@
+package atag.chains;
+
+import atag.util.CacheStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenizersTest {
+
+    private static final String TOKEN_REGEX = "(?U)((?<=\\W)|(?=\\W))";
+
+    private static List<String> segments(Tokenizer tokenizer, String text) {
+        List<String> result = new ArrayList<>();
+        Tokenizer.Cursor cursor = tokenizer.tokenize(text);
+        while (cursor.next()) {
+            result.add(text.substring(cursor.start(), cursor.end()));
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " ", "what a nice text", "here's a comma, in this text", "Ümlaute für den Spaß!",
+            "  leading and trailing  ", "a_b1 ²³ x́y", "...", "Zwi-\nschen"})
+    public void testWordsEqualsSplit(String text) {
+        assertEquals(List.of(text.split(TOKEN_REGEX)), segments(Tokenizers.words(), text));
+        assertEquals(List.of(text.split(TOKEN_REGEX)), segments(Tokenizers.regex(TOKEN_REGEX), text));
+    }
+
+    @Test
+    public void testRegexPatternCache() {
+        CacheStats stats = CacheStats.all().stream().filter(cache -> cache.name().equals("chains.regex")).findFirst().orElseThrow();
+        Tokenizers.regex(",");
+        long hits = stats.hits();
+        long evictions = stats.evictions();
+        Tokenizers.regex(",");
+        assertEquals(hits + 1, stats.hits());
+
+        // only the least recently used patterns are evicted, a recently used one stays cached
+        for (int i = 0; i < stats.capacity(); i++) {
+            Tokenizers.regex("," + i);
+            Tokenizers.regex(",");
+        }
+        assertTrue(stats.evictions() > evictions);
+        long misses = stats.misses();
+        Tokenizers.regex(",");
+        assertEquals(misses, stats.misses());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "abc", "a😀b"})
+    public void testCharactersEqualsSplit(String text) {
+        assertEquals(List.of(text.split("")), segments(Tokenizers.characters(), text));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {",", ",,a,,b,,", "a,b", "", ",a", "a,"})
+    public void testRegexEqualsSplit(String text) {
+        assertEquals(List.of(text.split(",")), segments(Tokenizers.regex(","), text));
+        assertEquals(List.of(text.split("(?=,)")), segments(Tokenizers.regex("(?=,)"), text));
+        assertEquals(List.of(text.split("")), segments(Tokenizers.regex(""), text));
+    }
+
+    @Test
+    public void testWordsEqualsSplitForRandomText() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < 200) {
+                char c = (char) random.nextInt(Character.MIN_SURROGATE);
+                sb.append(random.nextBoolean() ? c : (char) ('a' + random.nextInt(3)));
+            }
+            String text = sb.toString();
+            assertEquals(List.of(text.split(TOKEN_REGEX)), segments(Tokenizers.words(), text));
+        }
+    }
+
+    @Test
+    public void testBreakIterator() {
+        assertEquals(List.of("what", "  ", "a", " ", "nice", " ", "text", "."),
+                segments(Tokenizers.breakIterator(Locale.ENGLISH), "what  a nice text."));
+    }
+}
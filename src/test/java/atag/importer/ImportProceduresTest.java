@@ -8,6 +8,7 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 import org.neo4j.configuration.Config;
 import org.neo4j.configuration.GraphDatabaseSettings;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.harness.junit.extension.Neo4jExtension;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 
@@ -18,7 +19,9 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
+import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCause;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ImportProceduresTest {
 
@@ -99,6 +102,38 @@ class ImportProceduresTest {
 
     }
 
+    @Test
+    void testImportJgfOrder(GraphDatabaseService db) {
+        String json = """
+                {"graph": {"metadata": {"nested": {"nodes": []}}, "label": "test",
+                  "nodes": {"a": {"label": "Person", "metadata": {"name": "Alice"}},
+                            "b": {"label": "Person,Author", "metadata": {"name": "Bob", "tags": ["x", "y"]}}},
+                  "edges": [{"source": "a", "target": "b", "relation": "KNOWS", "metadata": {"since": 2020}}]},
+                 "version": 2}""";
+        // node ids kept in a memory-mapped file only
+        db.executeTransactionally("CALL atag.import.jgf($json, {idMapHeapLimit: 0}) YIELD nodeCount, relationshipCount RETURN *",
+                Map.of("json", json), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(2L, row.get("nodeCount"));
+            assertEquals(1L, row.get("relationshipCount"));
+            return null;
+        });
+        db.executeTransactionally("""
+            MATCH (:Person {name: 'Alice'})-[r:KNOWS {since: 2020}]->(:Person:Author {name: 'Bob'})
+            RETURN count(r) as count
+            """, Map.of(), result -> {
+            assertEquals(1L, Iterators.single(result).get("count"));
+            return null;
+        });
+
+        String edgesFirst = """
+                {"graph": {"edges": [{"source": "a", "target": "b", "relation": "KNOWS"}],
+                  "nodes": {"a": {"label": "Person", "metadata": {}}, "b": {"label": "Person", "metadata": {}}}}}""";
+        QueryExecutionException exception = assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally("CALL atag.import.jgf($json)", Map.of("json", edgesFirst), Iterators::count));
+        assertEquals("edge refers to node a which is not part of the preceding nodes", getRootCause(exception).getMessage());
+    }
+
     private void copyJgfFileToImportFolder(GraphDatabaseAPI db) {
         try {
             GraphDatabaseAPI api = db;
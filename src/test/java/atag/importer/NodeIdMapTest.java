@@ -0,0 +1,45 @@
+package atag.importer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NodeIdMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        try (NodeIdMap map = new NodeIdMap(2 << 20)) {
+            map.put("4:6c6b20af:0", 17);
+            map.put("äöü", 0);
+            map.put("", 5);
+            assertEquals(17, map.get("4:6c6b20af:0"));
+            assertEquals(0, map.get("äöü"));
+            assertEquals(5, map.get(""));
+            assertEquals(-1, map.get("4:6c6b20af:1"));
+
+            map.put("4:6c6b20af:0", 18);
+            assertEquals(18, map.get("4:6c6b20af:0"));
+            assertEquals(3, map.size());
+            assertFalse(map.spilled());
+        }
+    }
+
+    @Test
+    public void testGrowsAndSpillsToFile() {
+        int count = 200_000;
+        // the heap holds the first table chunk only, everything else is mapped
+        try (NodeIdMap map = new NodeIdMap(1 << 14)) {
+            for (int i = 0; i < count; i++) {
+                map.put("n" + i, i * 3L);
+            }
+            assertTrue(map.spilled());
+            assertEquals(count, map.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i * 3L, map.get("n" + i));
+            }
+            assertEquals(-1, map.get("n" + count));
+        }
+    }
+}
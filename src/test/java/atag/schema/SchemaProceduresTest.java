@@ -0,0 +1,40 @@
+package atag.schema;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.harness.junit.extension.Neo4jExtension;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SchemaProceduresTest {
+
+    @RegisterExtension
+    static Neo4jExtension neo4j = Neo4jExtension.builder()
+            .withProcedure(SchemaProcedures.class)
+            .build();
+
+    private static Map<String, String> createIndexes(GraphDatabaseService db, String config) {
+        return db.executeTransactionally("CALL atag.schema.createIndexes(" + config + ")", Collections.emptyMap(), result -> {
+            Map<String, String> statusByLabel = new HashMap<>();
+            result.forEachRemaining(row -> statusByLabel.put((String) row.get("label"), (String) row.get("status")));
+            return statusByLabel;
+        });
+    }
+
+    @Test
+    public void testCreateIndexes(GraphDatabaseService db) {
+        assertEquals(Map.of("Text", "created", "Character", "created", "Token", "created"), createIndexes(db, ""));
+        assertEquals(Map.of("Text", "exists", "Character", "exists", "Token", "exists", "Person", "created unique"),
+                createIndexes(db, "{labels: ['Person'], unique: true}"));
+
+        db.executeTransactionally("CALL db.awaitIndexes()");
+        long indexes = db.executeTransactionally("SHOW RANGE INDEXES YIELD labelsOrTypes, properties WHERE properties = ['uuid'] RETURN count(*) AS count",
+                Collections.emptyMap(), result -> (long) result.next().get("count"));
+        assertEquals(4, indexes);
+    }
+}
@@ -0,0 +1,80 @@
+package atag.text;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures {@code atag.text.import.html} on a large, nested HTML document. Each invocation runs in a transaction
+ * which is rolled back, so the database does not grow.
+ * <p>
+ * Not run by surefire. After {@code mvn test-compile} run {@link #main(String[])} from the IDE or
+ * {@code java -cp target/test-classes:target/classes:<test class path> org.openjdk.jmh.Main HtmlImportBenchmark},
+ * the test class path can be written by {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HtmlImportBenchmark {
+
+    @Param({"2000"})
+    public int paragraphs;
+
+    @Param({"4", "32"})
+    public int nesting;
+
+    private Neo4j neo4j;
+    private GraphDatabaseService db;
+
+    @Setup
+    public void setUp() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                .withDisabledServer()
+                .withProcedure(Importer.class)
+                .build();
+        db = neo4j.defaultDatabaseService();
+        db.executeTransactionally("CREATE (:Text {html: $html})", Map.of("html", html(paragraphs, nesting)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        neo4j.close();
+    }
+
+    @Benchmark
+    public Object importHtml() {
+        try (Transaction tx = db.beginTx()) {
+            return tx.execute("MATCH (t:Text) CALL atag.text.import.html(t, 'html') YIELD node RETURN count(node) AS count")
+                    .next().get("count");
+        }
+    }
+
+    /**
+     * paragraphs with inline markup, each wrapped into {@code nesting} divs
+     */
+    static String html(int paragraphs, int nesting) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<div>".repeat(nesting))
+                    .append("<p>Paragraph ").append(i).append(" with <em>emphasized <b>bold <a href='#").append(i)
+                    .append("'>linked</a> text</b></em> and a <br/> line break.</p>")
+                    .append("</div>".repeat(nesting));
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HtmlImportBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -1,11 +1,16 @@
 package atag.text;
 
+import atag.cache.CacheProcedures;
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.harness.junit.extension.Neo4jExtension;
 import org.neo4j.internal.helpers.collection.Iterators;
@@ -13,14 +18,18 @@ import org.neo4j.internal.helpers.collection.Iterators;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class ImporterTest {
 
@@ -53,6 +62,8 @@ public class ImporterTest {
                     }
             )
             .withProcedure(Importer.class)
+            .withProcedure(CacheProcedures.class)
+            .withFunction(Utils.class)
 //            .withProcedure(Xml.class)
             .build();
 
@@ -134,4 +145,268 @@ public class ImporterTest {
                 });
     }
 
+    @Test
+    public void testAnnotateXmlStreaming(GraphDatabaseService db) {
+        String query = """
+                CREATE (t:Text{text: $text})
+                WITH t
+                CALL atag.text.import.xml(t, 'text', '/TEI/text/body//node()', 'Annotation', 'plainText', 'HAS_ANNOTATION', {streaming: $streaming}) YIELD node
+                RETURN properties(node) AS node, t.plainText AS plainText
+                """;
+        List<String> texts = List.of(
+                db.executeTransactionally("MATCH (t:Text{id: 2}) RETURN t.text AS text", Collections.emptyMap(),
+                        result -> (String) Iterators.single(result).get("text")),
+                "<TEI><teiHeader><title>x</title></teiHeader><text><body><p>a <![CDATA[b<c]]><!-- comment --><hi xml:id='h'>de</hi></p></body></text>" +
+                        "<text><body><p>f</p></body></text></TEI>");
+        for (String text: texts) {
+            if (text.contains("comment")) {
+                // comments are not accepted by the DOM based import
+                List<Object> streamed = db.executeTransactionally(query, Map.of("text", text, "streaming", true),
+                        result -> result.columnAs("node").stream().toList());
+                assertEquals(List.of(
+                        Map.of("tag", "p", "startIndex", 0L, "endIndex", 7L, "plainText", "a b<cde"),
+                        Map.of("tag", "hi", "startIndex", 5L, "endIndex", 7L, "plainText", "de", "xml:id", "h"),
+                        Map.of("tag", "p", "startIndex", 7L, "endIndex", 8L, "plainText", "f")), streamed);
+                continue;
+            }
+            List<Map<String, Object>> dom = db.executeTransactionally(query, Map.of("text", text, "streaming", false), Iterators::asList);
+            List<Map<String, Object>> streamed = db.executeTransactionally(query, Map.of("text", text, "streaming", true), Iterators::asList);
+            assertEquals(70, streamed.size());
+            assertEquals(dom, streamed);
+        }
+
+        for (String path: new String[]{null, ""}) {
+            QueryExecutionException e = assertThrows(QueryExecutionException.class, () -> db.executeTransactionally("""
+                    CREATE (t:Text{text: '<p>a</p>'})
+                    WITH t
+                    CALL atag.text.import.xml(t, 'text', $path, 'Annotation', 'plainText', 'HAS_ANNOTATION', {streaming: true}) YIELD node
+                    RETURN node""", Collections.singletonMap("path", path)));
+            assertThat(e.getMessage(), Matchers.containsString("streaming import requires a path"));
+        }
+    }
+
+    public static Stream<Arguments> testAnnotateXmlPartialSelection() {
+        return Stream.of(
+                Arguments.of("//hi", List.of(Map.of("tag", "hi", "startIndex", 0L, "endIndex", 2L, "plainText", "bc")), ""),
+                Arguments.of("//hi | //p/text()", List.of(Map.of("tag", "hi", "startIndex", 1L, "endIndex", 3L, "plainText", "bc")), "ad"),
+                Arguments.of("//p//node()", List.of(Map.of("tag", "hi", "startIndex", 1L, "endIndex", 3L, "plainText", "bc")), "abcd")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    public void testAnnotateXmlPartialSelection(String path, List<Map<String, Object>> expectedAnnotations, String expectedPlainText,
+                                                GraphDatabaseService db) {
+        db.executeTransactionally("""
+                CREATE (t:Text{text: '<TEI><text><body><p>a<hi>bc</hi>d</p></body></text></TEI>'})
+                WITH t
+                CALL atag.text.import.xml(t, 'text', $path) YIELD node
+                RETURN collect(properties(node)) AS annotations, t.plainText AS plainText
+                """, Map.of("path", path), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(expectedAnnotations, row.get("annotations"));
+            assertEquals(expectedPlainText, row.get("plainText"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testAnnotatePlainTextMaxLength(GraphDatabaseService db) {
+        db.executeTransactionally("""
+                CREATE (t:Text {text: 'This <em>is</em> a <em>emphasized test with a <a href=\\'ref\\'>link</a></em>.'})
+                WITH t
+                CALL atag.text.import.html(t, 'text', 'Annotation', 'plainText', 'HAS_ANNOTATION', {plainTextMaxLength: 3}) YIELD node
+                RETURN node.plainText AS plainText, atag.text.slice(t, node.startIndex, node.endIndex) AS slice
+                """, Collections.emptyMap(), result -> {
+            List<Map<String, Object>> list = Iterators.asList(result);
+            assertEquals(List.of("is", "emp", "lin"), list.stream().map(row -> row.get("plainText")).toList());
+            assertEquals(List.of("is", "emphasized test with a link", "link"), list.stream().map(row -> row.get("slice")).toList());
+            return null;
+        });
+
+        db.executeTransactionally("""
+                MATCH (t:Text{id: 2})
+                CALL atag.text.import.xml(t, 'text', '/TEI/text/body//node()', 'Annotation', 'plainText', 'HAS_ANNOTATION', {plainTextMaxLength: 0}) YIELD node
+                WITH t, node
+                WHERE node.startIndex = 1029 AND node.tag = 'choice'
+                RETURN node.plainText AS plainText, atag.text.slice(t, node.startIndex, node.endIndex) AS slice
+                """, Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertNull(row.get("plainText"));
+            assertEquals("TrabantTrabanten", row.get("slice"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testAnnotateCharacterChain(GraphDatabaseService db) {
+        db.executeTransactionally("""
+                CREATE (t:Text {id: 'standoff', text: 'This <em>is</em> a <b>bold <i>x</i></b><br/>.'})
+                WITH t
+                CALL atag.text.import.html(t, 'text', 'Annotation', 'plainText', 'HAS_ANNOTATION', {characterChain: true}) YIELD node
+                RETURN count(node)
+                """);
+        db.executeTransactionally("""
+                MATCH (t:Text {id: 'standoff'})-[:HAS_ANNOTATION]->(a)
+                OPTIONAL MATCH (a)-[:STANDOFF_START]->(first:Character)
+                OPTIONAL MATCH (a)-[:STANDOFF_END]->(last:Character)
+                RETURN a.tag AS tag, first.startIndex AS first, last.startIndex AS last, first.text + last.text AS text
+                ORDER BY a.startIndex, a.tag
+                """, Collections.emptyMap(), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(List.of("em", "b", "i", "br"), rows.stream().map(row -> row.get("tag")).toList());
+            assertEquals(List.of(5, 10, 15), rows.subList(0, 3).stream().map(row -> row.get("first")).toList());
+            assertEquals(List.of(6, 15, 15), rows.subList(0, 3).stream().map(row -> row.get("last")).toList());
+            assertEquals(List.of("is", "bx", "xx"), rows.subList(0, 3).stream().map(row -> row.get("text")).toList());
+            assertNull(rows.get(3).get("first"));
+            return null;
+        });
+        String chain = db.executeTransactionally("""
+                MATCH (t:Text {id: 'standoff'})-[:NEXT_CHARACTER*]->(c:Character)
+                RETURN t.plainText AS plainText, reduce(s = '', x IN collect(c.text) | s + x) AS chain
+                """, Collections.emptyMap(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(row.get("plainText"), row.get("chain"));
+            return (String) row.get("chain");
+        });
+        assertEquals("This is a bold x.", chain);
+
+        db.executeTransactionally("""
+                CREATE (t:Text {id: 'standoffXml', text: '<p>a <b>bc</b></p>'})
+                WITH t
+                CALL atag.text.import.xml(t, 'text', '/p//node()', 'Annotation', 'plainText', 'HAS_ANNOTATION',
+                    {characterChain: true, streaming: true}) YIELD node
+                MATCH (node)-[:STANDOFF_START]->(first), (node)-[:STANDOFF_END]->(last)
+                RETURN first.text + last.text AS text
+                """, Collections.emptyMap(), result -> {
+            assertEquals("bc", Iterators.single(result).get("text"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testAnnotateResultMode(GraphDatabaseService db) {
+        db.executeTransactionally("CREATE (:Text {id: 'resultMode', text: '<p>a <b>b</b> <i>c</i></p>'})");
+        String query = """
+                MATCH (t:Text {id: 'resultMode'})
+                CALL atag.text.import.%s(t, 'text', %s{resultMode: $resultMode}) YIELD node, count
+                RETURN node.tag AS tag, count
+                """;
+        for (String procedure: List.of("html", "xml")) {
+            String arguments = procedure.equals("html") ? "'Annotation', 'plainText', 'HAS_ANNOTATION', " : "'/p//node()', 'Annotation', 'plainText', 'HAS_ANNOTATION', ";
+            String expectedFirst = procedure.equals("html") ? "p" : "b";
+            long expectedCount = procedure.equals("html") ? 3 : 2;
+
+            // earlier imports of the same node are not returned again
+            for (int i = 0; i < 2; i++) {
+                List<Map<String, Object>> nodes = db.executeTransactionally(query.formatted(procedure, arguments),
+                        Map.of("resultMode", "nodes"), Iterators::asList);
+                assertEquals(expectedCount, nodes.size());
+                assertEquals(expectedFirst, nodes.get(0).get("tag"));
+            }
+
+            Map<String, Object> count = db.executeTransactionally(query.formatted(procedure, arguments),
+                    Map.of("resultMode", "count"), Iterators::single);
+            assertNull(count.get("tag"));
+            assertEquals(expectedCount, count.get("count"));
+
+            assertEquals(0L, (long) db.executeTransactionally(query.formatted(procedure, arguments),
+                    Map.of("resultMode", "none"), Iterators::count));
+        }
+
+        QueryExecutionException e = assertThrows(QueryExecutionException.class, () -> db.executeTransactionally(
+                query.formatted("html", "'Annotation', 'plainText', 'HAS_ANNOTATION', "), Map.of("resultMode", "path")));
+        assertThat(e.getMessage(), Matchers.containsString("unknown resultMode 'path'"));
+    }
+
+    @Test
+    public void testImportCacheStats(GraphDatabaseService db) {
+        Map<String, Map<String, Object>> before = cacheStats(db);
+        for (int i = 0; i < 3; i++) {
+            db.executeTransactionally("""
+                    CREATE (t:Text {text: '<p>a <b>b</b></p>'})
+                    WITH t
+                    CALL atag.text.import.xml(t, 'text', '/p//node()') YIELD node
+                    RETURN count(*)
+                    """);
+        }
+        Map<String, Map<String, Object>> after = cacheStats(db);
+
+        // each worker thread compiles the expression at most once, later lookups are hits
+        Map<String, Object> xPathBefore = before.getOrDefault("import.xml.xpath", Map.of("hits", 0L, "misses", 0L));
+        Map<String, Object> xPathAfter = after.get("import.xml.xpath");
+        long lookups = (long) xPathAfter.get("hits") + (long) xPathAfter.get("misses")
+                - (long) xPathBefore.get("hits") - (long) xPathBefore.get("misses");
+        assertEquals(3L, lookups);
+        assertEquals((long) XmlParsers.XPATH_CACHE_SIZE, xPathAfter.get("capacity"));
+        assertThat(after, Matchers.hasKey("import.xml.documentBuilder"));
+    }
+
+    @Test
+    public void testImportHtmlAll(GraphDatabaseService db) {
+        db.executeTransactionally("""
+                UNWIND range(1, 5) AS i
+                CREATE (:Letter {html: 'Letter <b>' + i + '</b> of <i>five <b>letters</b></i>'})
+                """);
+        db.executeTransactionally("CREATE (:Letter)");
+        db.executeTransactionally("""
+                CALL atag.text.import.htmlAll('Letter', 'html', {batchSize: 2, parallelism: 2, plainTextProperty: 'plain'}) YIELD node, annotations, error
+                RETURN node.plain AS plainText, annotations, error
+                """, Collections.emptyMap(), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(6, rows.size());
+            assertEquals(5, rows.stream().filter(row -> row.get("error") == null).count());
+            assertThat(rows, Matchers.hasItem(Matchers.<Map<String, Object>>allOf(
+                    hasEntry("plainText", "Letter 3 of five letters"), hasEntry("annotations", 3L))));
+            assertEquals(List.of("node has no string property html"),
+                    rows.stream().map(row -> row.get("error")).filter(Objects::nonNull).toList());
+            return null;
+        });
+        long annotations = db.executeTransactionally("""
+                MATCH (:Letter)-[:HAS_ANNOTATION]->(a:Annotation) RETURN count(a) AS count
+                """, Collections.emptyMap(), result -> (long) Iterators.single(result).get("count"));
+        assertEquals(15L, annotations);
+    }
+
+    @Test
+    public void testImportXmlAll(GraphDatabaseService db) {
+        db.executeTransactionally("""
+                MATCH (t:Text {id: 2})
+                CREATE (:Document {xml: t.text}), (:Document {xml: '<TEI><text><body>broken</TEI>'})
+                """);
+        String expected = db.executeTransactionally("""
+                CREATE (t:Text {text: $xml})
+                WITH t
+                CALL atag.text.import.xml(t, 'text') YIELD node
+                WITH t, count(node) AS annotations
+                RETURN t.plainText + ' ' + annotations AS result
+                """, Map.of("xml", db.executeTransactionally("MATCH (t:Text {id: 2}) RETURN t.text AS text",
+                        Collections.emptyMap(), result -> Iterators.single(result).get("text"))),
+                result -> (String) Iterators.single(result).get("result"));
+
+        db.executeTransactionally("""
+                MATCH (d:Document)
+                WITH collect(d) AS nodes
+                CALL atag.text.import.xmlAll(nodes, 'xml', {batchSize: 1}) YIELD node, annotations, error
+                RETURN node.plainText + ' ' + annotations AS result, error
+                """, Collections.emptyMap(), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(2, rows.size());
+            assertEquals(expected, rows.get(0).get("result"));
+            assertNull(rows.get(0).get("error"));
+            assertThat((String) rows.get(1).get("error"), Matchers.containsString("must be terminated by the matching end-tag"));
+            return null;
+        });
+    }
+
+    private static Map<String, Map<String, Object>> cacheStats(GraphDatabaseService db) {
+        return db.executeTransactionally("""
+                CALL atag.cache.stats() YIELD name, capacity, hits, misses
+                RETURN name, {capacity: capacity, hits: hits, misses: misses} AS stats
+                """, Collections.emptyMap(), result -> {
+            Map<String, Map<String, Object>> stats = new HashMap<>();
+            result.forEachRemaining(row -> stats.put((String) row.get("name"), (Map<String, Object>) row.get("stats")));
+            return stats;
+        });
+    }
 }
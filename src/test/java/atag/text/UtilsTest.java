@@ -1,29 +1,51 @@
 package atag.text;
 
+import atag.cache.CacheProcedures;
+import atag.util.Hashes;
 import atag.util.HttpServerExtension;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.configuration.Config;
+import org.neo4j.configuration.GraphDatabaseSettings;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.harness.junit.extension.Neo4jExtension;
 import org.neo4j.internal.helpers.collection.Iterators;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCause;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.xmlunit.assertj3.XmlAssert.assertThat;
 
 public class UtilsTest {
     @RegisterExtension
     static Neo4jExtension neo4j = Neo4jExtension.builder()
             .withDisabledServer()
+            // only the function reading files, the other functions have to run sandboxed
+            .withConfig(GraphDatabaseSettings.procedure_unrestricted, List.of("atag.text.loadFile"))
             .withFunction(Utils.class)
+            .withFunction(LocalFiles.class)
+            .withProcedure(Utils.class)
+            .withProcedure(Importer.class)
+            .withProcedure(CacheProcedures.class)
             .build();
 
     @RegisterExtension
@@ -42,14 +64,45 @@ public class UtilsTest {
     }
 
     @Test
-    public void testLoadFile(GraphDatabaseService db, HttpServerExtension.HttpServerInfo httpServerInfo) throws IOException {
-        String text = (String) db.executeTransactionally("""
-                RETURN atag.text.load($uri + '/test.txt') AS text""",
-                Map.of("uri", httpServerInfo.getURI().toString()),
-                result -> Iterators.single(result).get("text")
-        );
+    public void testLoadFile(GraphDatabaseService db) throws IOException {
+        Path importDirectory = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Config.class)
+                .get(GraphDatabaseSettings.load_csv_file_url_root);
+        Files.createDirectories(importDirectory.resolve("letters"));
+        Files.copy(Paths.get("src/test/resources/test.txt"), importDirectory.resolve("letters/test.txt"), StandardCopyOption.REPLACE_EXISTING);
         String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/test.txt")));
-        assertEquals(expected, text);
+        String query = "RETURN atag.text.loadFile($uri, $config) AS text";
+
+        for (String uri: List.of("file:///letters/test.txt", "file://letters/test.txt", "file:///letters/../letters/test.txt")) {
+            assertEquals(expected, db.executeTransactionally(query, Map.of("uri", uri, "config", Map.of()),
+                    result -> Iterators.single(result).get("text")));
+        }
+
+        // large enough to be memory-mapped, with a byte order mark and characters of several bytes
+        String large = "äöü€ ".repeat((int) FileLoader.MAP_THRESHOLD / 5);
+        Files.writeString(importDirectory.resolve("large.txt"), "\uFEFF" + large, StandardCharsets.UTF_8);
+        assertEquals(large, db.executeTransactionally(query, Map.of("uri", "file:///large.txt", "config", Map.of()),
+                result -> Iterators.single(result).get("text")));
+
+        Files.writeString(importDirectory.resolve("latin1.txt"), "Grüße", StandardCharsets.ISO_8859_1);
+        assertEquals("Grüße", db.executeTransactionally(query, Map.of("uri", "file:///latin1.txt", "config", Map.of("charset", "ISO-8859-1")),
+                result -> Iterators.single(result).get("text")));
+
+        Map<String, String> errors = Map.of(
+                "file:///doesnotexist.txt", "could not find resource file:///doesnotexist.txt",
+                "file:///../test.txt", "file:///../test.txt is outside of the import directory",
+                "file:///letters", "file:///letters is a directory");
+        errors.forEach((uri, message) -> {
+            QueryExecutionException exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                    db.executeTransactionally(query, Map.of("uri", uri, "config", Map.of()), Iterators::count));
+            assertEquals(message, getRootCause(exception).getMessage());
+        });
+        QueryExecutionException exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally(query, Map.of("uri", "file:///large.txt", "config", Map.of("maxSize", 1000)), Iterators::count));
+        assertTrue(getRootCause(exception).getMessage().endsWith("more than maxSize 1000"));
+
+        exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally("RETURN atag.text.load('file:///letters/test.txt')", Map.of(), Iterators::count));
+        assertEquals("file URIs are read by atag.text.loadFile", getRootCause(exception).getMessage());
     }
 
     @Test
@@ -66,6 +119,104 @@ public class UtilsTest {
         assertEquals("could not find resource " + httpServerInfo.getURI() + "/doesnotexist.txt", getRootCause(exception).getMessage());
     }
 
+    @Test
+    public void testLoadCached(GraphDatabaseService db, HttpServerExtension.HttpServerInfo httpServerInfo) throws IOException {
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/test.txt")));
+        String query = "RETURN atag.text.load($uri + '/test.txt', {cache: true, timeout: 5000}) AS text";
+        for (int i = 0; i < 2; i++) {
+            String text = (String) db.executeTransactionally(query, Map.of("uri", httpServerInfo.getURI().toString()),
+                    result -> Iterators.single(result).get("text"));
+            assertEquals(expected, text);
+        }
+        long hits = db.executeTransactionally("""
+                CALL atag.cache.stats() YIELD name, hits WHERE name = 'load.http' RETURN hits""",
+                Map.of(), result -> (long) Iterators.single(result).get("hits"));
+        assertTrue(hits >= 1);
+
+        QueryExecutionException exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally("RETURN atag.text.load($uri, {timeout: 0})",
+                        Map.of("uri", httpServerInfo.getURI().toString()), Iterators::count));
+        assertEquals("timeout must be a positive number of milliseconds, got 0", getRootCause(exception).getMessage());
+    }
+
+    @Test
+    public void testLoadRedirect(GraphDatabaseService db, HttpServerExtension.HttpServerInfo httpServerInfo) throws IOException {
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/test.txt")));
+        Map<String, Object> params = Map.of("uri", httpServerInfo.getURI() + "/redirect/test.txt");
+        QueryExecutionException exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally("RETURN atag.text.load($uri)", params, Iterators::count));
+        assertEquals("Unexpected status code: 302", getRootCause(exception).getMessage());
+
+        String text = (String) db.executeTransactionally("RETURN atag.text.load($uri, {followRedirects: true}) AS text",
+                params, result -> Iterators.single(result).get("text"));
+        assertEquals(expected, text);
+    }
+
+    @Test
+    public void testHttpCacheDirectory(@TempDir Path temp) throws IOException {
+        Path directory = temp.resolve("cache");
+        HttpLoader.checkCacheDirectory(directory);
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+
+        Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxrwxrwx"));
+        IOException exception = Assertions.assertThrows(IOException.class, () -> HttpLoader.checkCacheDirectory(directory));
+        assertEquals("HTTP cache %s must be accessible by its owner only, but has permissions rwxrwxrwx".formatted(directory),
+                exception.getMessage());
+    }
+
+    @Test
+    public void testHttpCacheEviction(@TempDir Path directory) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            Files.writeString(directory.resolve(i + ".body"), "0123456789");
+            Files.writeString(directory.resolve(i + ".properties"), "etag=" + i);
+            Files.setLastModifiedTime(directory.resolve(i + ".body"), FileTime.fromMillis(1000L * (i == 0 ? 10 : i)));
+        }
+        // 1 is the least recently used
+        HttpLoader.evict(directory, 3, 1000);
+        assertTrue(Files.exists(directory.resolve("0.body")));
+        assertTrue(Files.notExists(directory.resolve("1.body")));
+        assertTrue(Files.notExists(directory.resolve("1.properties")));
+
+        HttpLoader.evict(directory, 3, 15);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of("0.body", "0.properties"), files.map(path -> path.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    public void testLoadAll(GraphDatabaseService db, HttpServerExtension.HttpServerInfo httpServerInfo) throws IOException {
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/test.txt")));
+        String uri = httpServerInfo.getURI().toString();
+        List<String> uris = List.of(uri + "/test.txt", uri + "/doesnotexist.txt", "ftp://example.org/test.txt", uri + "/test.txt");
+        db.executeTransactionally("""
+                CALL atag.text.loadAll($uris, {parallelism: 2}) YIELD uri, text, cached, error
+                RETURN uri, text, cached, error""", Map.of("uris", uris), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(uris, rows.stream().map(row -> row.get("uri")).toList());
+            assertEquals(expected, rows.get(0).get("text"));
+            assertEquals(false, rows.get(0).get("cached"));
+            assertNull(rows.get(0).get("error"));
+            assertEquals("could not find resource " + uri + "/doesnotexist.txt", rows.get(1).get("error"));
+            assertEquals("URI must start with 'http://' or 'https://'", rows.get(2).get("error"));
+            assertEquals(expected, rows.get(3).get("text"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testSlice(GraphDatabaseService db) {
+        db.executeTransactionally("""
+                CREATE (t:Text{plainText: 'what a nice text'})
+                RETURN atag.text.slice(t, 7, 11) AS slice, atag.text.slice(t, 12, 100) AS clipped,
+                    atag.text.slice(t, 0, 4, 'missing') AS missing""", Map.of(), result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals("nice", row.get("slice"));
+            assertEquals("text", row.get("clipped"));
+            assertEquals(null, row.get("missing"));
+            return null;
+        });
+    }
+
     @Test
     public void testXsltIdentity(GraphDatabaseService db, HttpServerExtension.HttpServerInfo httpServerInfo) throws IOException {
         URI uri = httpServerInfo.getURI();
@@ -110,4 +261,108 @@ public class UtilsTest {
         assertEquals(expected, text);
     }
 
+    @Test
+    public void testXsltGlobalVariable(GraphDatabaseService db) {
+        String xslt = """
+                <xsl:stylesheet version="3.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+                    <xsl:variable name="title" select="/TEI/teiHeader//title"/>
+                    <xsl:param name="count" select="count(//p)"/>
+                    <xsl:template match="/"><xsl:value-of select="$title, $count"/></xsl:template>
+                </xsl:stylesheet>""";
+        String text = db.executeTransactionally("RETURN atag.text.xslt($xml, $xslt, {method: 'text'}) AS text",
+                Map.of("xml", "<TEI><teiHeader><fileDesc><title>Letter</title></fileDesc></teiHeader><p/><p/></TEI>", "xslt", xslt),
+                result -> (String) Iterators.single(result).get("text"));
+        assertEquals("Letter 2", text);
+    }
+
+    @Test
+    public void testXsltSettings(GraphDatabaseService db) {
+        String xslt = """
+                <xsl:stylesheet version="3.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+                    <xsl:param name="greeting" select="'hello'"/>
+                    <xsl:param name="count" select="0"/>
+                    <xsl:template match="/"><out><xsl:value-of select="$greeting, $count + 1, count(//p)"/></out></xsl:template>
+                </xsl:stylesheet>""";
+        String query = "RETURN atag.text.xslt('<a><p/><p/></a>', $xslt, $config) AS text";
+
+        String text = db.executeTransactionally(query, Map.of("xslt", xslt, "config", Map.of("method", "text")),
+                result -> (String) Iterators.single(result).get("text"));
+        assertEquals("hello 1 2", text);
+
+        text = db.executeTransactionally(query, Map.of("xslt", xslt, "config",
+                        Map.of("indent", false, "parameters", Map.of("greeting", "hi", "count", 41))),
+                result -> (String) Iterators.single(result).get("text"));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><out>hi 42 2</out>", text);
+
+        QueryExecutionException exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally(query, Map.of("xslt", xslt, "config", Map.of("method", "pdf")), Iterators::count));
+        assertEquals("unknown output method 'pdf', must be one of [adaptive, html, json, text, xhtml, xml]",
+                getRootCause(exception).getMessage());
+    }
+
+    @Test
+    public void testXsltAll(GraphDatabaseService db) {
+        // the global variable depends on the document, so it must be evaluated for each of them
+        String xslt = """
+                <xsl:stylesheet version="3.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+                    <xsl:param name="prefix" select="''"/>
+                    <xsl:variable name="count" select="count(/a/p)"/>
+                    <xsl:template match="/"><xsl:value-of select="$prefix, $count"/></xsl:template>
+                </xsl:stylesheet>""";
+        db.executeTransactionally("""
+                CREATE (:Page {id: 6, xml: '<a>'}), (:Page {id: 7})
+                WITH *
+                UNWIND range(1, 5) AS i
+                CREATE (:Page {id: i, xml: '<a>' + reduce(s = '', j IN range(1, i) | s + '<p/>') + '</a>'})
+                """);
+
+        db.executeTransactionally("""
+                CALL atag.text.xsltAll('Page', 'xml', $xslt, 'text', {batchSize: 2, parallelism: 2, method: 'text', parameters: {prefix: 'p'}})
+                YIELD node, length, error
+                RETURN node.id AS id, node.text AS text, length, error ORDER BY id
+                """, Map.of("xslt", xslt), result -> {
+            List<Map<String, Object>> rows = Iterators.asList(result);
+            assertEquals(7, rows.size());
+            for (int i = 1; i <= 5; i++) {
+                Map<String, Object> row = rows.get(i - 1);
+                assertEquals("p " + i, row.get("text"));
+                assertEquals(3L, row.get("length"));
+                assertNull(row.get("error"));
+            }
+            assertNull(rows.get(5).get("text"));
+            assertNotNull(rows.get(5).get("error"));
+            assertEquals("node has no string property xml", rows.get(6).get("error"));
+            return null;
+        });
+
+        QueryExecutionException exception = Assertions.assertThrows(QueryExecutionException.class, () ->
+                db.executeTransactionally("CALL atag.text.xsltAll('Page', 'xml', '<broken', 'text')", Map.of(), Iterators::count));
+        assertTrue(exception.getMessage().contains("SXXP0003"));
+    }
+
+    @Test
+    public void testXsltCache(GraphDatabaseService db) {
+        db.executeTransactionally("CALL atag.text.xslt.cache.clear()", Map.of(), Iterators::count);
+        String xslt = """
+                <xsl:stylesheet version="3.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+                    <xsl:template match="/"><result><xsl:value-of select="count(//p)"/></result></xsl:template>
+                </xsl:stylesheet>""";
+        for (int i = 0; i < 3; i++) {
+            String text = db.executeTransactionally("RETURN atag.text.xslt('<a><p/><p/></a>', $xslt) AS text",
+                    Map.of("xslt", xslt), result -> (String) Iterators.single(result).get("text"));
+            assertEquals("<result>2</result>", text.replaceAll("<\\?xml.*\\?>", "").trim());
+        }
+
+        Map<String, Object> entry = db.executeTransactionally("CALL atag.text.xslt.cache.list()",
+                Map.of(), Iterators::single);
+        assertEquals(Hashes.sha256(xslt), entry.get("key"));
+        assertEquals(2L, entry.get("hits"));
+        assertEquals((long) xslt.length(), entry.get("length"));
+
+        assertEquals(0L, (long) db.executeTransactionally("CALL atag.text.xslt.cache.clear('unknown')",
+                Map.of(), result -> Iterators.single(result).get("removed")));
+        assertEquals(1L, (long) db.executeTransactionally("CALL atag.text.xslt.cache.clear($key)",
+                Map.of("key", entry.get("key")), result -> Iterators.single(result).get("removed")));
+        assertEquals(0L, (long) db.executeTransactionally("CALL atag.text.xslt.cache.list()", Map.of(), Iterators::count));
+    }
 }
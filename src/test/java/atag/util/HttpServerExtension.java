@@ -45,12 +45,23 @@ public class HttpServerExtension implements BeforeEachCallback, AfterEachCallbac
     public void beforeEach(ExtensionContext context) throws IOException {
         int port = findAvailablePort();
         server = HttpServer.create(new InetSocketAddress(port), 0);
+        // redirects /redirect/x to /x
+        server.createContext("/redirect/", httpExchange -> {
+            httpExchange.getResponseHeaders().set("Location", httpExchange.getRequestURI().getPath().substring("/redirect".length()));
+            httpExchange.sendResponseHeaders(302, -1);
+        });
         server.createContext("/", httpExchange -> {
             Path filePath = FileSystems.getDefault().getPath("src/test/resources").resolve(httpExchange.getRequestURI().getPath().substring(1));
             if (!Files.exists(filePath) || Files.isDirectory(filePath)) {
                 httpExchange.sendResponseHeaders(404, -1);
                 return;
             }
+            String etag = "\"%d-%d\"".formatted(Files.size(filePath), Files.getLastModifiedTime(filePath).toMillis());
+            httpExchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(httpExchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                httpExchange.sendResponseHeaders(304, -1);
+                return;
+            }
             httpExchange.sendResponseHeaders(200, Files.size(filePath));
             try (var os = httpExchange.getResponseBody(); var is = Files.newInputStream(filePath)) {
                 is.transferTo(os);
@@ -0,0 +1,48 @@
+package atag.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        CacheStats stats = CacheStats.register("test.count", 2);
+        LruCache<String, String> cache = new LruCache<>(stats);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        assertNull(cache.get("b"));
+        assertEquals(List.of("A", "C"), cache.values());
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.evictions());
+    }
+
+    @Test
+    public void testEvictsByWeight() {
+        CacheStats stats = CacheStats.register("test.weight", 10);
+        LruCache<String, String> cache = new LruCache<>(stats, 5, String::length);
+        cache.put("a", "aa");
+        cache.put("b", "bbb");
+        assertEquals(5, cache.weight());
+
+        cache.put("c", "c");
+        assertEquals(List.of("bbb", "c"), cache.values());
+        assertEquals(4, cache.weight());
+
+        // a single entry exceeding the limit is kept
+        cache.put("d", "dddddd");
+        assertEquals(List.of("dddddd"), cache.values());
+        assertEquals(6, cache.weight());
+
+        cache.remove("d");
+        assertEquals(0, cache.weight());
+    }
+}